@@ -0,0 +1,39 @@
+package benchmark;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Recorded ffmpeg output in benchmark/resources
+ */
+public class BenchmarkResources {
+
+    @NotNull
+    public static List<String> readLines(@NotNull String name) throws IOException {
+        InputStream inputStream = BenchmarkResources.class.getResourceAsStream("/" + name);
+        if (inputStream == null) {
+            throw new IOException(name + " not found, is benchmark/resources in the classpath?");
+        }
+
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            while (true) {
+                String line = reader.readLine();
+                if (line == null) {
+                    break;
+                }
+
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+}
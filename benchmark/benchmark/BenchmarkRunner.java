@@ -0,0 +1,177 @@
+package benchmark;
+
+import com.getting.util.JsonReader;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Run benchmarks and compare with the baseline results kept in benchmark/baseline.json:
+ * <pre>
+ * java benchmark.BenchmarkRunner [--save-baseline] [--threshold percent] [benchmark regex ...]
+ * </pre>
+ * Exit with 1 if any benchmark is slower than the baseline by more than the threshold, 10% by default.
+ * Run from the project directory.
+ */
+public class BenchmarkRunner {
+
+    private static final File RESULT_FILE = new File("benchmark/results/latest.json");
+
+    private static final File BASELINE_FILE = new File("benchmark/baseline.json");
+
+    public static void main(String[] args) throws IOException, RunnerException {
+        boolean saveBaseline = false;
+        double threshold = 10;
+        OptionsBuilder options = new OptionsBuilder();
+        for (int i = 0; i < args.length; i++) {
+            if ("--save-baseline".equals(args[i])) {
+                saveBaseline = true;
+            } else if ("--threshold".equals(args[i]) && i + 1 < args.length) {
+                threshold = Double.parseDouble(args[++i]);
+            } else {
+                options.include(args[i]);
+            }
+        }
+
+        Files.createDirectories(RESULT_FILE.getParentFile().toPath());
+        new Runner(options.resultFormat(ResultFormatType.JSON).result(RESULT_FILE.getPath()).build()).run();
+
+        if (saveBaseline) {
+            Files.copy(RESULT_FILE.toPath(), BASELINE_FILE.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            System.out.println("baseline saved to " + BASELINE_FILE);
+            return;
+        }
+
+        if (!BASELINE_FILE.isFile()) {
+            System.out.println("no baseline, save one with --save-baseline");
+            return;
+        }
+
+        final int regressions = compare(readScores(BASELINE_FILE), readScores(RESULT_FILE), threshold);
+        System.exit(regressions > 0 ? 1 : 0);
+    }
+
+    /**
+     * @return count of regressions
+     */
+    private static int compare(@NotNull Map<String, Score> baseline, @NotNull Map<String, Score> latest, double threshold) {
+        int regressions = 0;
+        System.out.println(String.format("%-70s %14s %14s %9s", "Benchmark", "Baseline", "Latest", "Change"));
+        for (Map.Entry<String, Score> entry : latest.entrySet()) {
+            final Score score = entry.getValue();
+            final Score baselineScore = baseline.get(entry.getKey());
+            if (baselineScore == null || !baselineScore.unit.equals(score.unit)) {
+                System.out.println(String.format("%-70s %14s %14.3f %9s", entry.getKey(), "-", score.value, "new"));
+                continue;
+            }
+
+            // throughput is better higher, times are better lower
+            double change = (score.value - baselineScore.value) / baselineScore.value * 100;
+            if (score.throughput) {
+                change = -change;
+            }
+            final boolean regression = change > threshold;
+            if (regression) {
+                regressions++;
+            }
+            System.out.println(String.format("%-70s %14.3f %14.3f %+8.1f%%%s", entry.getKey(), baselineScore.value, score.value, change, regression ? " REGRESSION" : ""));
+        }
+        return regressions;
+    }
+
+    /**
+     * Read benchmark name with params, mode and score of JMH json results
+     */
+    @NotNull
+    private static Map<String, Score> readScores(@NotNull File file) throws IOException {
+        Map<String, Score> scores = new LinkedHashMap<>();
+        try (Reader fileReader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+             JsonReader reader = new JsonReader(fileReader)) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                String benchmark = null;
+                String mode = null;
+                List<String> params = new ArrayList<>();
+                Score score = null;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.nextName()) {
+                        case "benchmark":
+                            benchmark = reader.nextString();
+                            break;
+                        case "mode":
+                            mode = reader.nextString();
+                            break;
+                        case "params":
+                            reader.beginObject();
+                            while (reader.hasNext()) {
+                                params.add(reader.nextName() + "=" + reader.nextString());
+                            }
+                            reader.endObject();
+                            break;
+                        case "primaryMetric":
+                            score = readScore(reader);
+                            break;
+                        default:
+                            reader.skipValue();
+                            break;
+                    }
+                }
+                reader.endObject();
+
+                if (benchmark != null && score != null) {
+                    score.throughput = "thrpt".equals(mode);
+                    scores.put(benchmark + (params.isEmpty() ? "" : params.toString()) + " " + mode, score);
+                }
+            }
+            reader.endArray();
+        }
+        return scores;
+    }
+
+    @NotNull
+    private static Score readScore(@NotNull JsonReader reader) throws IOException {
+        Score score = new Score();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "score":
+                    score.value = reader.nextDouble();
+                    break;
+                case "scoreUnit":
+                    score.unit = reader.nextString();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return score;
+    }
+
+    private static final class Score {
+
+        private double value;
+
+        @NotNull
+        private String unit = "";
+
+        private boolean throughput;
+
+    }
+
+}
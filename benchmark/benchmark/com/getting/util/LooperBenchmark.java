@@ -0,0 +1,64 @@
+package benchmark.com.getting.util;
+
+import com.getting.util.Looper;
+import com.getting.util.Task;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Post and remove tasks from several threads, the tasks are delayed long enough to never run
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class LooperBenchmark {
+
+    private Looper looper;
+
+    @Setup
+    public void setup() {
+        looper = new Looper("benchmark");
+    }
+
+    @TearDown
+    public void tearDown() {
+        looper.removeAllTasks();
+        looper.quit();
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+
+        final Object id = new Object();
+
+    }
+
+    @Benchmark
+    public void postAndRemoveTask(ThreadState threadState) {
+        looper.postTask(new IdleTask(threadState.id));
+        looper.removeTask(threadState.id);
+    }
+
+    @Benchmark
+    public boolean postLatestTask(ThreadState threadState) {
+        return looper.postLatestTask(new IdleTask(threadState.id));
+    }
+
+    private static class IdleTask extends Task {
+
+        IdleTask(Object id) {
+            super(id, TimeUnit.HOURS.toMillis(1));
+        }
+
+        @Override
+        public void run() {
+        }
+
+    }
+
+}
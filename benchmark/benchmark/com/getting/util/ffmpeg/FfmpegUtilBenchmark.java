@@ -0,0 +1,62 @@
+package benchmark.com.getting.util.ffmpeg;
+
+import benchmark.BenchmarkResources;
+import com.getting.util.ffmpeg.FfmpegProgress;
+import com.getting.util.ffmpeg.FfmpegUtil;
+import com.getting.util.ffmpeg.ProgressParser;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of recorded ffmpeg output
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FfmpegUtilBenchmark {
+
+    private static final String[] PROGRESS_LINES = {"frame=25", "fps=24.31", "stream_0_0_q=-0.0", "total_size=421888",
+            "out_time_ms=3570000", "out_time=00:00:03.570000", "dup_frames=0", "drop_frames=0", "speed=3.45x", "progress=continue"};
+
+    private List<String> inputMessages;
+
+    private List<String> convertMessages;
+
+    @Setup
+    public void setup() throws Exception {
+        inputMessages = BenchmarkResources.readLines("ffmpeg-input.log");
+        convertMessages = BenchmarkResources.readLines("ffmpeg-convert.log");
+    }
+
+    @Benchmark
+    public FfmpegUtil.VideoInfo getVideoInfo() {
+        return FfmpegUtil.getVideoInfo(inputMessages);
+    }
+
+    @Benchmark
+    public void getConvertDuration(Blackhole blackhole) {
+        for (String message : convertMessages) {
+            blackhole.consume(FfmpegUtil.getConvertDuration(message));
+        }
+    }
+
+    @Benchmark
+    public FfmpegProgress parseProgress() {
+        ProgressParser parser = new ProgressParser();
+        FfmpegProgress progress = null;
+        for (String line : PROGRESS_LINES) {
+            FfmpegProgress parsed = parser.feed(line);
+            if (parsed != null) {
+                progress = parsed;
+            }
+        }
+        return progress;
+    }
+
+}
@@ -0,0 +1,72 @@
+package benchmark.media;
+
+import com.getting.util.executor.ExecuteResult;
+import media.GifConvertExecuteTask;
+import media.GifConverter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Whole conversion against a stub ffmpeg, which prints recorded progress and writes a small file, so the time is
+ * the overhead of this program: process start, output pumping, progress parsing and caching.
+ * The stub is a shell script, run it on Linux or macOS.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConvertBenchmark {
+
+    private static final String STUB = "#!/bin/sh\n" +
+            "for last; do :; done\n" +
+            "printf 'frame=10\\nout_time_ms=1000000\\nprogress=continue\\nframe=20\\nout_time_ms=2000000\\nprogress=end\\n'\n" +
+            "head -c 65536 /dev/zero > \"$last\"\n";
+
+    private File directory;
+
+    private File video;
+
+    private GifConverter gifConverter;
+
+    /**
+     * Changed for each conversion so that the output cache misses
+     */
+    private double frameRate = 1;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("gifconvert-benchmark").toFile();
+        // the stub and all caches live here, never next to a real ffmpeg; must be set before media classes load
+        System.setProperty("java.io.tmpdir", directory.getAbsolutePath());
+        File stub = new File(directory, "ffmpeg");
+        Files.write(stub.toPath(), STUB.getBytes(StandardCharsets.UTF_8));
+        if (!stub.setExecutable(true)) {
+            throw new IOException("can not run " + stub);
+        }
+        System.setProperty("gifconvert.ffmpeg.path", stub.getAbsolutePath());
+
+        video = new File(directory, "video.mp4");
+        Files.write(video.toPath(), new byte[1024]);
+        gifConverter = new GifConverter();
+    }
+
+    @Benchmark
+    public ExecuteResult convert() {
+        frameRate += 0.001;
+        return gifConverter.convert(new GifConvertExecuteTask(video, frameRate, 0.5, 1, 3, false, null), (DoubleConsumer) null);
+    }
+
+    @Benchmark
+    public ExecuteResult convertCached() {
+        return gifConverter.convert(new GifConvertExecuteTask(video, 7, 0.5, 1, 3, false, null), (DoubleConsumer) null);
+    }
+
+}
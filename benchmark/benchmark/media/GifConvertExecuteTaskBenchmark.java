@@ -0,0 +1,45 @@
+package benchmark.media;
+
+import media.GifConvertExecuteTask;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the ffmpeg command line, with the logo rendered on first use
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class GifConvertExecuteTaskBenchmark {
+
+    private File video;
+
+    @Setup
+    public void setup() throws IOException {
+        video = Files.createTempFile("benchmark", ".mp4").toFile();
+    }
+
+    @TearDown
+    public void tearDown() {
+        video.delete();
+    }
+
+    @Benchmark
+    public List<String> buildParameters() {
+        return new GifConvertExecuteTask(video, 7, 0.8, 12.5, 5, false, "2017/1/21 下午3:00", true).buildParameters();
+    }
+
+    @Benchmark
+    public List<String> buildPreviewParameters() {
+        return new GifConvertExecuteTask(video, 7, 0.8, 12.5, 5, true, null).toPreview(320).buildParameters();
+    }
+
+}
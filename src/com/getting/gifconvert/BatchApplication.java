@@ -0,0 +1,419 @@
+package com.getting.gifconvert;
+
+import com.getting.util.FileUtil;
+import com.getting.util.executor.ExecuteResult;
+import com.getting.util.executor.ExecutorPool;
+import com.getting.util.ffmpeg.FfmpegUtil;
+import com.getting.util.metrics.MetricRegistry;
+import com.getting.util.metrics.MetricsMBean;
+import com.getting.util.metrics.MetricsServer;
+import media.GifConvertExecuteTask;
+import media.GifConverter;
+import media.OutputFormat;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Convert videos without any window, usage:
+ * <pre>
+ * java -cp GifConvert.jar com.getting.gifconvert.BatchApplication [options] &lt;directory | glob | @manifest&gt;...
+ * </pre>
+ */
+public class BatchApplication {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchApplication.class);
+
+    private static final String USAGE = "usage: BatchApplication [options] <directory | glob | @manifest>...\n" +
+            "  --fps <value>        output frame rate, default 7\n" +
+            "  --scale <value>      output scale, default 0.8\n" +
+            "  --start <second>     convert start time, default 0\n" +
+            "  --duration <second>  convert duration, default 5, at most 30\n" +
+            "  --reverse            reverse output\n" +
+            "  --logo <text>        add text logo\n" +
+            "  --format <name>      gif, webp, apng or mp4, default gif\n" +
+            "  --palette            generate palette for each clip, better quality and smaller gif\n" +
+            "  --encoder <name>     gif encoder, ffmpeg or java, default ffmpeg\n" +
+            "  --jobs <count>       parallel conversions, default by processors and memory\n" +
+            "  --summary <file>     write json summary to file instead of stdout\n" +
+            "  --metrics <port>     serve metrics at http://127.0.0.1:<port>/metrics while converting";
+
+    private double frameRate = 7;
+    private double scale = 0.8;
+    private double startTime = 0;
+    private double duration = 5;
+    private boolean reverse;
+    private boolean usePalette;
+    @NotNull
+    private OutputFormat outputFormat = OutputFormat.GIF;
+    @NotNull
+    private GifConverter.Encoder encoder = GifConverter.Encoder.FFMPEG;
+    @Nullable
+    private String logo;
+    private int jobs = ExecutorPool.getDefaultWorkerCount();
+    @Nullable
+    private File summaryFile;
+    private int metricsPort = -1;
+    /**
+     * Canonical files, a video matched by several inputs is converted once
+     */
+    private final Set<File> videos = new LinkedHashSet<>();
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+
+        BatchApplication application = new BatchApplication();
+        try {
+            application.parseArguments(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        System.exit(application.run() ? 0 : 1);
+    }
+
+    private void parseArguments(@NotNull String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            final String arg = args[i];
+            switch (arg) {
+                case "--fps":
+                    frameRate = parseNumber(arg, nextArgument(args, ++i, arg));
+                    break;
+                case "--scale":
+                    scale = parseNumber(arg, nextArgument(args, ++i, arg));
+                    break;
+                case "--start":
+                    startTime = parseNumber(arg, nextArgument(args, ++i, arg));
+                    break;
+                case "--duration":
+                    duration = parseNumber(arg, nextArgument(args, ++i, arg));
+                    break;
+                case "--reverse":
+                    reverse = true;
+                    break;
+                case "--palette":
+                    usePalette = true;
+                    break;
+                case "--format":
+                    outputFormat = parseFormat(arg, nextArgument(args, ++i, arg));
+                    break;
+                case "--encoder":
+                    encoder = parseEncoder(arg, nextArgument(args, ++i, arg));
+                    break;
+                case "--logo":
+                    logo = nextArgument(args, ++i, arg);
+                    break;
+                case "--jobs":
+                    jobs = (int) parseNumber(arg, nextArgument(args, ++i, arg));
+                    break;
+                case "--summary":
+                    summaryFile = new File(nextArgument(args, ++i, arg));
+                    break;
+                case "--metrics":
+                    metricsPort = (int) parseNumber(arg, nextArgument(args, ++i, arg));
+                    break;
+                default:
+                    if (arg.startsWith("--")) {
+                        throw new IllegalArgumentException("unknown option " + arg);
+                    }
+                    for (File video : collectVideos(arg)) {
+                        videos.add(getCanonicalFile(video));
+                    }
+                    break;
+            }
+        }
+
+        if (videos.isEmpty()) {
+            throw new IllegalArgumentException("no video found");
+        }
+        if (jobs < 1) {
+            throw new IllegalArgumentException("--jobs must be at least 1");
+        }
+        // written as !(x > 0) so that NaN is rejected too
+        if (!(frameRate > 0) || Double.isInfinite(frameRate)) {
+            throw new IllegalArgumentException("--fps must be greater than 0");
+        }
+        if (!(scale > 0) || Double.isInfinite(scale)) {
+            throw new IllegalArgumentException("--scale must be greater than 0");
+        }
+        if (!(startTime >= 0) || Double.isInfinite(startTime)) {
+            throw new IllegalArgumentException("--start must not be negative");
+        }
+        if (!(duration > 0) || duration > 30) {
+            throw new IllegalArgumentException("--duration must be greater than 0 and at most 30");
+        }
+        if (metricsPort > 65535) {
+            throw new IllegalArgumentException("invalid value of --metrics: " + metricsPort);
+        }
+    }
+
+    @NotNull
+    private static String nextArgument(@NotNull String[] args, int index, @NotNull String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("missing value of " + option);
+        }
+
+        return args[index];
+    }
+
+    private static double parseNumber(@NotNull String option, @NotNull String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid value of " + option + ": " + value);
+        }
+    }
+
+    @NotNull
+    private static OutputFormat parseFormat(@NotNull String option, @NotNull String value) {
+        try {
+            return OutputFormat.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("invalid value of " + option + ": " + value);
+        }
+    }
+
+    @NotNull
+    private static GifConverter.Encoder parseEncoder(@NotNull String option, @NotNull String value) {
+        try {
+            return GifConverter.Encoder.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("invalid value of " + option + ": " + value);
+        }
+    }
+
+    /**
+     * @param input a directory, a glob like "videos/*.mp4", or "@list.txt" with one path on each line
+     */
+    @NotNull
+    private static List<File> collectVideos(@NotNull String input) {
+        if (input.startsWith("@")) {
+            return readManifest(new File(input.substring(1)));
+        }
+
+        final File file = new File(input);
+        if (file.isDirectory()) {
+            return listVideos(file.toPath(), BatchApplication::isSupportedVideo, 1);
+        }
+
+        if (file.isFile()) {
+            List<File> videos = new ArrayList<>();
+            videos.add(file);
+            return videos;
+        }
+
+        final int firstGlobIndex = indexOfGlob(input);
+        if (firstGlobIndex < 0) {
+            throw new IllegalArgumentException("not found " + input);
+        }
+
+        final int separatorIndex = Math.max(input.lastIndexOf('/', firstGlobIndex), input.lastIndexOf('\\', firstGlobIndex));
+        final Path baseDirectory = Paths.get(separatorIndex < 0 ? "." : input.substring(0, separatorIndex + 1));
+        final String pattern = input.substring(separatorIndex + 1);
+        final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        return listVideos(baseDirectory, path -> matcher.matches(baseDirectory.relativize(path)), pattern.contains("**") ? Integer.MAX_VALUE : pattern.split("[/\\\\]").length);
+    }
+
+    @NotNull
+    private static List<File> readManifest(@NotNull File manifest) {
+        List<File> videos = new ArrayList<>();
+        final File baseDirectory = manifest.getAbsoluteFile().getParentFile();
+        try {
+            for (String line : Files.readAllLines(manifest.toPath(), StandardCharsets.UTF_8)) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                File video = new File(line);
+                videos.add(video.isAbsolute() ? video : new File(baseDirectory, line));
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("cannot read manifest " + manifest + ": " + e.getMessage());
+        }
+        return videos;
+    }
+
+    @NotNull
+    private static List<File> listVideos(@NotNull Path directory, @NotNull PathMatcher matcher, int maxDepth) {
+        try (Stream<Path> paths = Files.walk(directory, maxDepth)) {
+            return paths.filter(Files::isRegularFile)
+                    .filter(matcher::matches)
+                    .sorted()
+                    .map(Path::toFile)
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("cannot list " + directory + ": " + e.getMessage());
+        }
+    }
+
+    private static int indexOfGlob(@NotNull String input) {
+        for (int i = 0; i < input.length(); i++) {
+            if ("*?[{".indexOf(input.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Match the extension ignoring case, "VIDEO.MP4" from a camera is a video too
+     */
+    private static boolean isSupportedVideo(@NotNull Path path) {
+        final String fileName = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        return GifConvertExecuteTask.SUPPORT_VIDEO_FORMATS.stream()
+                .anyMatch(format -> fileName.endsWith(format.substring(format.indexOf('.'))));
+    }
+
+    @NotNull
+    private static File getCanonicalFile(@NotNull File file) {
+        try {
+            return file.getCanonicalFile();
+        } catch (IOException e) {
+            return file.getAbsoluteFile();
+        }
+    }
+
+    private boolean run() {
+        LOGGER.info("convert " + videos.size() + " videos with " + jobs + " jobs");
+
+        MetricsMBean.register(MetricRegistry.getDefault());
+        if (metricsPort >= 0) {
+            try {
+                new MetricsServer(MetricRegistry.getDefault(), metricsPort).start();
+            } catch (IOException e) {
+                LOGGER.error("run", e);
+            }
+        }
+
+        final long startTime = System.currentTimeMillis();
+        final GifConverter gifConverter = new GifConverter();
+        gifConverter.setEncoder(encoder);
+        final ExecutorPool pool = new ExecutorPool("batch", jobs);
+        // videos ffmpeg can not read fail here without a conversion, the others are cached for their conversions
+        final Map<File, FfmpegUtil.VideoInfo> videoInfos = gifConverter.probeAll(pool, videos);
+        final List<GifConvertExecuteTask> tasks = new ArrayList<>();
+        final List<Future<ExecuteResult>> results = new ArrayList<>();
+        for (File video : videos) {
+            GifConvertExecuteTask task = new GifConvertExecuteTask(video, frameRate, scale, this.startTime, duration, reverse, logo, usePalette, outputFormat);
+            tasks.add(task);
+            if (videoInfos.get(video) == null) {
+                LOGGER.warn("cannot read " + video);
+                ExecuteResult result = new ExecuteResult();
+                result.setStatus(ExecuteResult.Status.FAIL);
+                results.add(CompletableFuture.completedFuture(result));
+                continue;
+            }
+
+            results.add(gifConverter.submit(pool, task, null));
+        }
+
+        boolean allSuccess = true;
+        final StringBuilder summary = new StringBuilder();
+        summary.append("{\n  \"jobs\": [");
+        for (int i = 0; i < tasks.size(); i++) {
+            final GifConvertExecuteTask task = tasks.get(i);
+            ExecuteResult result;
+            try {
+                result = results.get(i).get();
+            } catch (InterruptedException | ExecutionException e) {
+                LOGGER.error("run", e);
+                result = null;
+            }
+
+            final String status = result == null ? ExecuteResult.Status.FAIL.name() : result.getStatus().name();
+            allSuccess &= result != null && result.getStatus() == ExecuteResult.Status.SUCCESS;
+            final File output = task.getOutputFile();
+            LOGGER.info(task.getVideo() + " " + status + (output.isFile() ? " " + FileUtil.formatFileSize(output) : ""));
+
+            summary.append(i == 0 ? "\n" : ",\n");
+            summary.append("    {\"input\": ").append(quote(task.getVideo().getAbsolutePath()))
+                    .append(", \"output\": ").append(quote(output.getAbsolutePath()))
+                    .append(", \"status\": ").append(quote(status))
+                    .append(", \"costTime\": ").append(result == null ? 0 : result.getCostTime())
+                    .append(", \"outputSize\": ").append(output.isFile() ? output.length() : 0)
+                    .append("}");
+        }
+        summary.append("\n  ],\n  \"jobCount\": ").append(jobs)
+                .append(",\n  \"totalTime\": ").append(System.currentTimeMillis() - startTime)
+                .append("\n}\n");
+        pool.shutdown();
+        LOGGER.info("metrics\n" + MetricRegistry.getDefault().toText());
+
+        writeSummary(summary.toString());
+        return allSuccess;
+    }
+
+    private void writeSummary(@NotNull String summary) {
+        if (summaryFile == null) {
+            System.out.print(summary);
+            return;
+        }
+
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(Files.newOutputStream(summaryFile.toPath()), StandardCharsets.UTF_8))) {
+            writer.print(summary);
+        } catch (IOException e) {
+            LOGGER.error("writeSummary", e);
+        }
+    }
+
+    @NotNull
+    private static String quote(@NotNull String value) {
+        StringBuilder builder = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        builder.append(c);
+                    }
+                    break;
+            }
+        }
+        return builder.append('"').toString();
+    }
+
+}
@@ -1,5 +1,8 @@
 package com.getting.gifconvert;
 
+import com.getting.util.metrics.MetricRegistry;
+import com.getting.util.metrics.MetricsMBean;
+import com.getting.util.metrics.MetricsServer;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
@@ -7,15 +10,32 @@ import javafx.scene.Scene;
 import javafx.scene.image.Image;
 import javafx.stage.Stage;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
 
 public class MainApplication extends Application {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(MainApplication.class);
+
+    /**
+     * Serve metrics on this local port if set, like -Dgifconvert.metrics.port=9404
+     */
+    private static final String METRICS_PORT_PROPERTY = "gifconvert.metrics.port";
+
+    @Nullable
+    private MetricsServer metricsServer;
+
     public static void main(String[] args) {
         launch(args);
     }
 
     @Override
     public void start(@NotNull Stage primaryStage) throws Exception {
+        startMetrics();
+
         Parent root = FXMLLoader.load(getClass().getResource("main.fxml"));
         primaryStage.setResizable(false);
         primaryStage.setTitle("视频转Gif");
@@ -24,4 +44,27 @@ public class MainApplication extends Application {
         primaryStage.show();
     }
 
+    @Override
+    public void stop() {
+        if (metricsServer != null) {
+            metricsServer.stop();
+        }
+    }
+
+    private void startMetrics() {
+        MetricsMBean.register(MetricRegistry.getDefault());
+
+        final Integer port = Integer.getInteger(METRICS_PORT_PROPERTY);
+        if (port == null) {
+            return;
+        }
+
+        try {
+            metricsServer = new MetricsServer(MetricRegistry.getDefault(), port);
+            metricsServer.start();
+        } catch (IOException e) {
+            LOGGER.error("startMetrics", e);
+        }
+    }
+
 }
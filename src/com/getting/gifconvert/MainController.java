@@ -6,6 +6,10 @@ import com.getting.util.*;
 import com.getting.util.annotation.UiThread;
 import com.getting.util.binding.NullableObjectStringFormatter;
 import com.getting.util.executor.ExecuteResult;
+import com.getting.util.ffmpeg.FfmpegUtil;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Platform;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleObjectProperty;
@@ -15,13 +19,18 @@ import javafx.fxml.Initializable;
 import javafx.scene.control.CheckMenuItem;
 import javafx.scene.control.Label;
 import javafx.scene.control.Slider;
+import javafx.scene.control.ToggleGroup;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.input.TransferMode;
 import javafx.scene.layout.Pane;
 import javafx.stage.FileChooser;
+import javafx.util.Duration;
+import media.FrameServer;
 import media.GifConvertExecuteTask;
 import media.GifConverter;
+import media.OutputFormat;
+import media.PreviewFrames;
 import org.controlsfx.control.NotificationPane;
 import org.controlsfx.control.PlusMinusSlider;
 import org.controlsfx.control.RangeSlider;
@@ -31,9 +40,10 @@ import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.net.MalformedURLException;
 import java.net.URL;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -45,14 +55,34 @@ public class MainController implements Initializable {
     private static final Logger LOGGER = LoggerFactory.getLogger(MainController.class);
 
     private static final Object MSG_CONVERT_VIDEO = new Object();
+    private static final Object MSG_EXPORT_VIDEO = new Object();
+
+    /**
+     * Preview should be shown within this time after a change, preview size is adjusted to meet it
+     */
+    private static final long PREVIEW_LATENCY_BUDGET = 300;
+    /**
+     * Wait this long after a slider moves before converting, so that a drag converts only where it stops
+     */
+    private static final long PREVIEW_DEBOUNCE_DELAY = 80;
+    private static final int PREVIEW_MIN_WIDTH = 160;
+    private static final int PREVIEW_MAX_WIDTH = 480;
+    /**
+     * Preview frames are picked from frames decoded at this rate, the highest gif frame rate
+     */
+    private static final double PREVIEW_FRAME_RATE = 18;
 
     private final GifConverter gifConverter = new GifConverter();
+    private final FrameServer frameServer = new FrameServer(PREVIEW_MAX_WIDTH, PREVIEW_FRAME_RATE);
     private final Looper convertLoop = new Looper("convert");
     private final Looper uiLoop = new Looper("Ui");
 
     private final Image loadingImage = new Image(MainController.class.getResource("loading.gif").toExternalForm(), true);
     private final PathRecord lastVisitPathRecord = new PathRecord(MainController.class, "last visit directory");
 
+    @Nullable
+    private Timeline previewAnimation;
+
     @FXML
     private ImageView gifPreviewView;
     @FXML
@@ -72,6 +102,10 @@ public class MainController implements Initializable {
     @FXML
     private CheckMenuItem addLogoView;
     @FXML
+    private CheckMenuItem usePaletteView;
+    @FXML
+    private ToggleGroup outputFormatGroup;
+    @FXML
     private Label videoInfoView;
     @FXML
     private NotificationPane notificationPane;
@@ -80,10 +114,14 @@ public class MainController implements Initializable {
     @NotNull
     private ObjectProperty<File> inputVideo = new SimpleObjectProperty<>();
 
+    private int previewWidth = 320;
+
     @Override
     public void initialize(URL location, ResourceBundle resources) {
         showLoadingImage();
 
+        gifConverter.setReuseDecodedSegment(true);
+
         statusBar.progressProperty().bind(gifConverter.executeProgressProperty());
         videoInfoView.textProperty().bind(new NullableObjectStringFormatter<>(gifConverter.videoInfoProperty()));
         inputVideoStartTimeView.textProperty().bind(new VideoDurationStringFormatter(inputVideoDurationView.lowValueProperty()));
@@ -91,7 +129,7 @@ public class MainController implements Initializable {
         inputVideoDurationView.setLabelFormatter(new VideoDurationLabelFormatter());
 
         {
-            final ChangeListener<Number> convertParameterChangeListener = (observable, oldValue, newValue) -> reloadGifConvert(1000);
+            final ChangeListener<Number> convertParameterChangeListener = (observable, oldValue, newValue) -> reloadGifConvert(PREVIEW_DEBOUNCE_DELAY);
 
             inputVideoDurationView.lowValueProperty().addListener(convertParameterChangeListener);
             inputVideoDurationView.highValueProperty().addListener(convertParameterChangeListener);
@@ -104,6 +142,7 @@ public class MainController implements Initializable {
 
             reverseGifView.selectedProperty().addListener(convertParameterChangeListener);
             addLogoView.selectedProperty().addListener(convertParameterChangeListener);
+            usePaletteView.selectedProperty().addListener(convertParameterChangeListener);
         }
 
         inputVideo.addListener((observable, oldValue, newValue) -> {
@@ -136,6 +175,7 @@ public class MainController implements Initializable {
             convertLoop.quit();
             uiLoop.removeAllTasks();
             uiLoop.quit();
+            frameServer.close();
             Platform.exit();
         });
     }
@@ -156,6 +196,16 @@ public class MainController implements Initializable {
         }
     }
 
+    @FXML
+    private void onExport() {
+        if (!isConvertParametersValid()) {
+            return;
+        }
+
+        // exporting the same gif again is skipped
+        convertLoop.postLatestTask(new GifConvertTask(0, false));
+    }
+
     @FXML
     private void onOpenSaveDirectory() {
         if (inputVideo.get() == null) {
@@ -175,36 +225,86 @@ public class MainController implements Initializable {
 
     @UiThread
     private void reloadGifConvert(long delay) {
-        convertLoop.removeTask(MSG_CONVERT_VIDEO);
-
         notificationPane.hide();
 
-        if (inputVideo.get() == null) {
+        if (!isConvertParametersValid()) {
+            convertLoop.removeTask(MSG_CONVERT_VIDEO);
             return;
         }
 
+        // a slider moved back, or a change not affecting the preview, keeps the conversion already started
+        convertLoop.postLatestTask(new GifConvertTask(delay, true));
+    }
+
+    @UiThread
+    private boolean isConvertParametersValid() {
+        if (inputVideo.get() == null) {
+            return false;
+        }
+
         if (!inputVideo.get().exists() || !inputVideo.get().isFile()) {
             notificationPane.show("所选择的文件已被删除，请重新选择文件");
-            return;
+            return false;
         }
 
         if (inputVideoDurationView.getHighValue() - inputVideoDurationView.getLowValue() > 30) {
             notificationPane.show("转换时间长度过长");
-            return;
+            return false;
         }
 
         if (inputVideoDurationView.getHighValue() - inputVideoDurationView.getLowValue() < 1) {
-            return;
+            return false;
         }
 
-        convertLoop.postTask(new GifConvertTask(delay));
+        return true;
+    }
+
+    /**
+     * Smaller preview if the last one was slower than {@link #PREVIEW_LATENCY_BUDGET}, larger if it was fast enough
+     */
+    @UiThread
+    private void adjustPreviewWidth(long previewCostTime) {
+        if (previewCostTime > PREVIEW_LATENCY_BUDGET) {
+            previewWidth = Math.max(PREVIEW_MIN_WIDTH, previewWidth * 3 / 4);
+        } else if (previewCostTime < PREVIEW_LATENCY_BUDGET / 2) {
+            previewWidth = Math.min(PREVIEW_MAX_WIDTH, previewWidth + 40);
+        }
     }
 
     @UiThread
     private void showLoadingImage() {
+        stopPreviewAnimation();
         gifPreviewView.setImage(loadingImage);
     }
 
+    /**
+     * Play the frames over and over like the gif would
+     */
+    @UiThread
+    private void showPreviewFrames(@NotNull PreviewFrames frames, double frameRate) {
+        stopPreviewAnimation();
+        gifPreviewView.setImage(frames.show(0));
+        if (frames.size() < 2) {
+            return;
+        }
+
+        final int[] frameIndex = {0};
+        previewAnimation = new Timeline(new KeyFrame(Duration.seconds(1 / frameRate), event -> {
+            frameIndex[0] = (frameIndex[0] + 1) % frames.size();
+            gifPreviewView.setImage(frames.show(frameIndex[0]));
+        }));
+        previewAnimation.setCycleCount(Animation.INDEFINITE);
+        previewAnimation.play();
+    }
+
+    @UiThread
+    private void stopPreviewAnimation() {
+        if (previewAnimation != null) {
+            previewAnimation.stop();
+            previewAnimation = null;
+        }
+    }
+
     @UiThread
     private void showNotificationForAWhile(String message) {
         notificationPane.show(message);
@@ -250,7 +350,11 @@ public class MainController implements Initializable {
         @Nullable
         @Override
         public Void runTask() {
-            gifConverter.updateVideoInfo(inputVideo.get());
+            final File video = inputVideo.get();
+            FfmpegUtil.VideoInfo videoInfo = gifConverter.updateVideoInfo(video);
+            if (videoInfo != null) {
+                frameServer.open(video, videoInfo);
+            }
             return null;
         }
 
@@ -261,31 +365,74 @@ public class MainController implements Initializable {
 
     }
 
+    /**
+     * Convert a small preview, or export the full quality gif next to the video
+     */
     private class GifConvertTask extends AsyncTask<ExecuteResult> {
 
         @NotNull
         private final GifConvertExecuteTask parameters;
 
-        public GifConvertTask(long delay) {
-            super(MSG_CONVERT_VIDEO, delay);
-            String logo = addLogoView.isSelected() ? new SimpleDateFormat().format(new Date()) : " ";
-            parameters = new GifConvertExecuteTask(inputVideo.get(),
+        private final boolean preview;
+
+        @Nullable
+        private Image previewImage;
+
+        /**
+         * Frames served by {@link #frameServer}, shown instead of {@link #previewImage}
+         */
+        @Nullable
+        private PreviewFrames previewFrames;
+
+        public GifConvertTask(long delay, boolean preview) {
+            super(preview ? MSG_CONVERT_VIDEO : MSG_EXPORT_VIDEO, delay);
+            this.preview = preview;
+            String logo = addLogoView.isSelected() ? new SimpleDateFormat().format(new Date()) : null;
+            GifConvertExecuteTask parameters = new GifConvertExecuteTask(inputVideo.get(),
                     gifFrameRateView.getValue(),
                     gifScaleView.getValue(),
                     inputVideoDurationView.getLowValue(),
                     inputVideoDurationView.getHighValue() - inputVideoDurationView.getLowValue(),
                     reverseGifView.isSelected(),
-                    logo);
+                    logo,
+                    usePaletteView.isSelected(),
+                    OutputFormat.valueOf((String) outputFormatGroup.getSelectedToggle().getUserData()));
+            this.parameters = preview ? parameters.toPreview(previewWidth) : parameters;
+        }
+
+        @Nullable
+        @Override
+        public Object getParameters() {
+            return parameters.getOutputKey();
         }
 
         @Override
         public void preTaskOnUi() {
-            showLoadingImage();
+            if (preview) {
+                showLoadingImage();
+            }
         }
 
         @Override
         public ExecuteResult runTask() {
-            return gifConverter.convert(parameters);
+            if (!preview) {
+                return gifConverter.convert(parameters);
+            }
+
+            PreviewFrames frames = new PreviewFrames();
+            ExecuteResult frameResult = frameServer.renderPreview(parameters, frames);
+            if (frameResult.getStatus() != ExecuteResult.Status.FAIL) {
+                previewFrames = frames;
+                return frameResult;
+            }
+
+            // frames can not be served, convert the preview gif instead, it is never written to disk
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            ExecuteResult result = gifConverter.convert(parameters, outputStream);
+            if (result != null && result.getStatus() == ExecuteResult.Status.SUCCESS) {
+                previewImage = new Image(new ByteArrayInputStream(outputStream.toByteArray()));
+            }
+            return result;
         }
 
         @Override
@@ -294,13 +441,23 @@ public class MainController implements Initializable {
                 return;
             }
 
-            try {
-                gifPreviewView.setImage(new Image(parameters.getOutputFile().toURI().toURL().toExternalForm(), true));
-            } catch (MalformedURLException e) {
-                e.printStackTrace();
+            if (result.getStatus() == ExecuteResult.Status.CANCELED) {
+                return;
             }
 
-            if (result.getStatus() == ExecuteResult.Status.CANCELED) {
+            if (preview) {
+                if (previewFrames != null) {
+                    showPreviewFrames(previewFrames, parameters.getOutputFrameRate());
+                    adjustPreviewWidth(result.getCostTime());
+                } else if (previewImage != null) {
+                    gifPreviewView.setImage(previewImage);
+                    adjustPreviewWidth(result.getCostTime());
+                } else {
+                    showNotificationForAWhile("转换失败！！是否选择了有效的视频文件？");
+                }
+                // only the view holds the shown preview, it is dropped once the next one is shown
+                previewFrames = null;
+                previewImage = null;
                 return;
             }
 
@@ -309,7 +466,7 @@ public class MainController implements Initializable {
 
         @Override
         public void cancel() {
-            gifConverter.cancel();
+            gifConverter.cancel(parameters);
         }
 
     }
@@ -0,0 +1,71 @@
+package media;
+
+import com.getting.util.FileCache;
+import com.getting.util.executor.ExecuteTask;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+
+/**
+ * Task whose output is kept in a {@link FileCache} and reused by later conversions.
+ * Output is written to a part file first and only visible after {@link #commit()}.
+ */
+public abstract class CacheExecuteTask extends ExecuteTask {
+
+    @NotNull
+    private final FileCache cache;
+
+    @NotNull
+    private final File cacheFile;
+
+    private File partFile;
+
+    public CacheExecuteTask(@NotNull FileCache cache, @NotNull String key, @NotNull String extension) {
+        this.cache = cache;
+        this.cacheFile = cache.getFile(key, extension);
+    }
+
+    @NotNull
+    protected synchronized File getPartFile() {
+        if (partFile == null) {
+            partFile = cache.getPartFile(cacheFile);
+        }
+        return partFile;
+    }
+
+    @Override
+    public File getOutputDirectory() {
+        return cache.getDirectory();
+    }
+
+    /**
+     * Generated before, no need to execute again
+     */
+    public boolean isCached() {
+        return cacheFile.isFile();
+    }
+
+    /**
+     * Make output visible to other conversions after this task success
+     */
+    public boolean commit() {
+        return cache.commit(getPartFile(), cacheFile);
+    }
+
+    public void discard() {
+        File partFile = getPartFile();
+        if (partFile.exists() && !partFile.delete()) {
+            partFile.deleteOnExit();
+        }
+    }
+
+    public void touch() {
+        cache.touch(cacheFile);
+    }
+
+    @NotNull
+    public File getCacheFile() {
+        return cacheFile;
+    }
+
+}
@@ -0,0 +1,455 @@
+package media;
+
+import com.getting.util.executor.ExecuteResult;
+import com.getting.util.executor.Executor;
+import com.getting.util.ffmpeg.FfmpegUtil;
+import com.getting.util.metrics.Counter;
+import com.getting.util.metrics.Histogram;
+import com.getting.util.metrics.MetricRegistry;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keep one ffmpeg decoding the opened video and render previews from its frames, instead of starting ffmpeg for
+ * each preview. Frames are decoded once at a fixed size and rate, see {@link FrameServerExecuteTask}:
+ * <ul>
+ * <li>a preview further on reads on from the running process, which decodes only a few frames ahead</li>
+ * <li>recent frames are kept, a preview moving back among them needs no decoding</li>
+ * <li>a preview before the kept frames or far ahead restarts the process at its start time</li>
+ * </ul>
+ * Previews show the decoded colors without gif palette, exports still go through {@link GifConverter}.
+ */
+public class FrameServer extends Executor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FrameServer.class);
+
+    /**
+     * Frames decoded before they are asked for, the pipe blocks ffmpeg after them
+     */
+    private static final int READ_AHEAD_FRAMES = 4;
+
+    /**
+     * Bytes of recent frames kept, about 18 seconds of 480x270 at 18 fps
+     */
+    private static final long WINDOW_SIZE = 128L * 1024 * 1024;
+
+    /**
+     * Bytes of rendered frames a preview keeps at most, a longer one keeps every few frames and shows each longer
+     */
+    private static final long PREVIEW_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * Seconds to decode on instead of restarting, a restart costs about as much as decoding this far
+     */
+    private static final double SKIP_AHEAD_LIMIT = 3;
+
+    /**
+     * Seconds to start a process before the asked time, so that moving back a little needs no restart
+     */
+    private static final double BACKWARD_MARGIN = 1;
+
+    private static final long POLL_INTERVAL = 100;
+
+    /**
+     * Give up a process which sends no frame in this time, in millisecond
+     */
+    private static final long FRAME_TIMEOUT = 10000;
+
+    private static final Counter STARTS = MetricRegistry.getDefault().counter("gifconvert_frame_server_starts_total", "Decode processes started for previews");
+
+    private static final Histogram RENDER_TIME = MetricRegistry.getDefault().histogram("gifconvert_preview_render_seconds", "Time to render a preview from served frames", Histogram.SECONDS_BUCKETS);
+
+    /**
+     * Width of decoded frames at most
+     */
+    private final int maxWidth;
+
+    private final double frameRate;
+
+    @Nullable
+    private File video;
+
+    /**
+     * Size of the video as shown, after rotation
+     */
+    @Nullable
+    private Point displaySize;
+
+    /**
+     * Size of decoded frames
+     */
+    @Nullable
+    private Point frameSize;
+
+    @Nullable
+    private Session session;
+
+    /**
+     * @param maxWidth  width of decoded frames at most, the widest preview
+     * @param frameRate rate of decoded frames, the highest preview frame rate
+     */
+    public FrameServer(int maxWidth, double frameRate) {
+        super(GifConverter.CONVERTER);
+        this.maxWidth = maxWidth;
+        this.frameRate = frameRate;
+    }
+
+    /**
+     * Stop serving the last video and start decoding this one from the beginning
+     */
+    public synchronized void open(@NotNull File video, @NotNull FfmpegUtil.VideoInfo videoInfo) {
+        closeSession();
+        final Point videoSize = videoInfo.getVideoSize();
+        final boolean rotated = videoInfo.getRotation() == 90 || videoInfo.getRotation() == 270;
+        this.video = video;
+        displaySize = rotated ? new Point(videoSize.y, videoSize.x) : videoSize;
+        final int width = Math.max(2, Math.min(displaySize.x, maxWidth) / 2 * 2);
+        frameSize = new Point(width, Math.max(2, (int) Math.round((double) displaySize.y * width / displaySize.x / 2) * 2));
+        startSession(0);
+    }
+
+    public synchronized void close() {
+        closeSession();
+        video = null;
+    }
+
+    /**
+     * Render the preview of parameters frame by frame like the gif would be: scaled, reversed and with logo
+     *
+     * @param frames receive the frames in showing order
+     * @return FAIL if the video is not opened or can not be decoded, CANCELED once parameters are canceled
+     */
+    @NotNull
+    public synchronized ExecuteResult renderPreview(@NotNull GifConvertExecuteTask parameters, @NotNull PreviewFrames frames) {
+        final ExecuteResult result = new ExecuteResult();
+        if (video == null || displaySize == null || !video.equals(parameters.getVideo())) {
+            result.setStatus(ExecuteResult.Status.FAIL);
+            return result;
+        }
+
+        final double startTime = parameters.getConvertStartTime();
+        final double outputFrameRate = parameters.getOutputFrameRate();
+        // same as scale=w=min(iw*scale\,maxWidth):h=-2 of the gif preview
+        double width = displaySize.x * parameters.getOutputScale();
+        if (parameters.getPreviewMaxWidth() > 0) {
+            width = Math.min(width, parameters.getPreviewMaxWidth());
+        }
+        final int imageWidth = Math.max(1, (int) width);
+        final int imageHeight = Math.max(2, (int) Math.round((double) displaySize.y * imageWidth / displaySize.x / 2) * 2);
+        final BufferedImage logo = readLogo(parameters.getLogo());
+
+        final int frameCount = Math.max(1, (int) Math.round(parameters.getOutputDuration() * outputFrameRate));
+        final long frameSize = (long) imageWidth * imageHeight * 3;
+        final int repeat = (int) Math.max(1, (frameCount * frameSize + PREVIEW_SIZE - 1) / PREVIEW_SIZE);
+        frames.reset(imageWidth, imageHeight, repeat);
+
+        final Session session = prepareSession(startTime);
+        for (int i = 0; i < frameCount; i += repeat) {
+            final int index = (int) Math.round((startTime + i / outputFrameRate - session.startTime) * frameRate);
+            final Frame frame = session.getFrame(index, parameters);
+            if (parameters.isCanceled()) {
+                result.setStatus(ExecuteResult.Status.CANCELED);
+                return result;
+            }
+            if (frame == null) {
+                // end of the video
+                break;
+            }
+
+            frames.add(render(frame, imageWidth, imageHeight, logo));
+        }
+
+        if (session.failed || frames.isEmpty()) {
+            LOGGER.warn("renderPreview " + parameters.getVideo() + " got " + frames.size() + " frames, failed " + session.failed);
+            closeSession();
+            result.setStatus(ExecuteResult.Status.FAIL);
+            return result;
+        }
+
+        if (parameters.isReverse()) {
+            frames.reverse();
+        }
+        result.setStatus(ExecuteResult.Status.SUCCESS);
+        RENDER_TIME.observeNanos(result.getCostNanoTime());
+        LOGGER.info("renderPreview " + frames.size() + " frames, each kept frame shown " + repeat + " times, in " + result.getCostTime() + "ms");
+        return result;
+    }
+
+    /**
+     * @return a process which has or will decode the frame at startTime
+     */
+    @NotNull
+    private Session prepareSession(double startTime) {
+        if (session != null && !session.failed) {
+            final double firstTime = session.startTime + session.getFirstIndex() / frameRate;
+            final double nextTime = session.startTime + session.nextIndex / frameRate;
+            if (startTime >= firstTime - 0.5 / frameRate && startTime <= nextTime + SKIP_AHEAD_LIMIT) {
+                return session;
+            }
+        }
+
+        return startSession(Math.max(0, startTime - BACKWARD_MARGIN));
+    }
+
+    @NotNull
+    private Session startSession(double startTime) {
+        closeSession();
+        final FrameServerExecuteTask task = new FrameServerExecuteTask(video, startTime, frameRate, frameSize.x, frameSize.y);
+        final Session newSession = new Session(task, frameSize.x, frameSize.y);
+        session = newSession;
+        STARTS.increment();
+        LOGGER.info("start " + task);
+        executeAsync(task, newSession::read, null).thenAccept(result -> newSession.ended = true);
+        return newSession;
+    }
+
+    private void closeSession() {
+        if (session == null) {
+            return;
+        }
+
+        session.closed = true;
+        cancel(session.task);
+        session = null;
+    }
+
+    @Nullable
+    private static BufferedImage readLogo(@Nullable String logo) {
+        if (!Logo.isVisible(logo)) {
+            return null;
+        }
+
+        try {
+            return ImageIO.read(new Logo(logo).create());
+        } catch (IOException e) {
+            LOGGER.error("readLogo", e);
+            return null;
+        }
+    }
+
+    /**
+     * Scale bilinearly and overlay the logo at the bottom right like overlay=x=W-w-10:y=H-h-10
+     *
+     * @return rgb24 row by row
+     */
+    @NotNull
+    private static byte[] render(@NotNull Frame frame, int width, int height, @Nullable BufferedImage logo) {
+        final byte[] pixels = new byte[width * height * 3];
+        final byte[] rgb = frame.rgb;
+        final double xRatio = (double) frame.width / width;
+        final double yRatio = (double) frame.height / height;
+        for (int y = 0; y < height; y++) {
+            final double sourceY = Math.max(0, Math.min(frame.height - 1, (y + 0.5) * yRatio - 0.5));
+            final int y0 = (int) sourceY;
+            final int y1 = Math.min(y0 + 1, frame.height - 1);
+            final double fy = sourceY - y0;
+            for (int x = 0; x < width; x++) {
+                final double sourceX = Math.max(0, Math.min(frame.width - 1, (x + 0.5) * xRatio - 0.5));
+                final int x0 = (int) sourceX;
+                final int x1 = Math.min(x0 + 1, frame.width - 1);
+                final double fx = sourceX - x0;
+                for (int channel = 0; channel < 3; channel++) {
+                    final double top = (rgb[(y0 * frame.width + x0) * 3 + channel] & 0xFF) * (1 - fx) + (rgb[(y0 * frame.width + x1) * 3 + channel] & 0xFF) * fx;
+                    final double bottom = (rgb[(y1 * frame.width + x0) * 3 + channel] & 0xFF) * (1 - fx) + (rgb[(y1 * frame.width + x1) * 3 + channel] & 0xFF) * fx;
+                    pixels[(y * width + x) * 3 + channel] = (byte) (top * (1 - fy) + bottom * fy + 0.5);
+                }
+            }
+        }
+
+        if (logo != null) {
+            overlay(pixels, width, height, logo, width - logo.getWidth() - 10, height - logo.getHeight() - 10);
+        }
+        return pixels;
+    }
+
+    private static void overlay(@NotNull byte[] pixels, int width, int height, @NotNull BufferedImage logo, int left, int top) {
+        for (int y = Math.max(0, -top); y < logo.getHeight() && top + y < height; y++) {
+            for (int x = Math.max(0, -left); x < logo.getWidth() && left + x < width; x++) {
+                final int logoPixel = logo.getRGB(x, y);
+                final int alpha = logoPixel >>> 24;
+                if (alpha == 0) {
+                    continue;
+                }
+
+                final int offset = ((top + y) * width + left + x) * 3;
+                for (int channel = 0; channel < 3; channel++) {
+                    final int color = ((logoPixel >> (16 - channel * 8)) & 0xFF) * alpha + (pixels[offset + channel] & 0xFF) * (255 - alpha);
+                    pixels[offset + channel] = (byte) ((color + 127) / 255);
+                }
+            }
+        }
+    }
+
+    /**
+     * One decoded frame, rgb24 row by row
+     */
+    private static final class Frame {
+
+        private final int width;
+
+        private final int height;
+
+        @NotNull
+        private final byte[] rgb;
+
+        private Frame(int width, int height, @NotNull byte[] rgb) {
+            this.width = width;
+            this.height = height;
+            this.rgb = rgb;
+        }
+
+    }
+
+    /**
+     * One decoding process, frame i is at {@link #startTime} + i / frameRate
+     */
+    private static final class Session {
+
+        @NotNull
+        private final FrameServerExecuteTask task;
+
+        private final double startTime;
+
+        private final int width;
+
+        private final int height;
+
+        /**
+         * Frames read from the process but not asked for yet
+         */
+        private final BlockingQueue<Frame> readAhead = new ArrayBlockingQueue<>(READ_AHEAD_FRAMES);
+
+        /**
+         * Recent frames asked for, from index {@link #getFirstIndex()} to {@link #nextIndex} - 1
+         */
+        private final List<Frame> window = new ArrayList<>();
+
+        private long windowSize;
+
+        /**
+         * Index of the next frame taken from {@link #readAhead}
+         */
+        private int nextIndex;
+
+        /**
+         * The process has sent all frames it will
+         */
+        private volatile boolean ended;
+
+        private volatile boolean closed;
+
+        /**
+         * The process sent no frame in time, the session can not be used any more
+         */
+        private volatile boolean failed;
+
+        private Session(@NotNull FrameServerExecuteTask task, int width, int height) {
+            this.task = task;
+            this.startTime = task.getStartTime();
+            this.width = width;
+            this.height = height;
+        }
+
+        private int getFirstIndex() {
+            return nextIndex - window.size();
+        }
+
+        /**
+         * Read frames on a pump thread, blocks while {@link #readAhead} is full so ffmpeg never decodes far ahead
+         */
+        private void read(@NotNull InputStream inputStream) {
+            try (DataInputStream input = new DataInputStream(inputStream)) {
+                while (!closed) {
+                    byte[] rgb = new byte[width * height * 3];
+                    try {
+                        input.readFully(rgb);
+                    } catch (EOFException e) {
+                        break;
+                    }
+
+                    final Frame frame = new Frame(width, height, rgb);
+                    while (!closed && !readAhead.offer(frame, POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+                        // wait for the frames to be asked for
+                    }
+                }
+            } catch (IOException e) {
+                if (!closed) {
+                    throw new UncheckedIOException(e);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                ended = true;
+            }
+        }
+
+        /**
+         * @param index at least {@link #getFirstIndex()}
+         * @return null at the end of the video, on failure or once executeTask is canceled
+         */
+        @Nullable
+        private Frame getFrame(int index, @NotNull GifConvertExecuteTask executeTask) {
+            index = Math.max(index, getFirstIndex());
+            if (index < nextIndex) {
+                return window.get(index - getFirstIndex());
+            }
+
+            Frame frame = null;
+            while (nextIndex <= index) {
+                frame = takeFrame(executeTask);
+                if (frame == null) {
+                    return null;
+                }
+
+                window.add(frame);
+                windowSize += frame.rgb.length;
+                nextIndex++;
+                while (windowSize > WINDOW_SIZE && window.size() > 1) {
+                    windowSize -= window.remove(0).rgb.length;
+                }
+            }
+            return frame;
+        }
+
+        @Nullable
+        private Frame takeFrame(@NotNull GifConvertExecuteTask executeTask) {
+            long waitTime = 0;
+            try {
+                while (!executeTask.isCanceled()) {
+                    final Frame frame = readAhead.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                    if (frame != null) {
+                        return frame;
+                    }
+                    if (ended && readAhead.isEmpty()) {
+                        failed = nextIndex == 0;
+                        return null;
+                    }
+
+                    waitTime += POLL_INTERVAL;
+                    if (waitTime >= FRAME_TIMEOUT) {
+                        LOGGER.warn(task + " sent no frame in " + FRAME_TIMEOUT + "ms");
+                        failed = true;
+                        return null;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }
+
+    }
+
+}
@@ -0,0 +1,73 @@
+package media;
+
+import com.getting.util.executor.ExecuteTask;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decode the video from a time to the end as raw rgb24 frames of a fixed size and rate on standard output.
+ * The process stays alive as long as its output is read, nothing is decoded far ahead of the reader.
+ */
+public class FrameServerExecuteTask extends ExecuteTask {
+
+    private final File video;
+
+    private final double startTime;
+
+    private final double frameRate;
+
+    private final int width;
+
+    private final int height;
+
+    public FrameServerExecuteTask(@NotNull File video, double startTime, double frameRate, int width, int height) {
+        this.video = video;
+        this.startTime = startTime;
+        this.frameRate = frameRate;
+        this.width = width;
+        this.height = height;
+    }
+
+    @NotNull
+    @Override
+    public List<String> buildParameters() {
+        List<String> command = new ArrayList<>();
+        command.add("-nostats");
+        command.add("-loglevel");
+        command.add("error");
+        command.add("-ss");
+        command.add("" + startTime);
+        command.add("-i");
+        command.add(video.getAbsolutePath());
+        command.add("-an");
+        command.add("-vf");
+        command.add("fps=" + frameRate + ",scale=" + width + ":" + height);
+        command.add("-pix_fmt");
+        command.add("rgb24");
+        command.add("-f");
+        command.add("rawvideo");
+        command.add("pipe:1");
+        return command;
+    }
+
+    @Nullable
+    @Override
+    public File getOutputDirectory() {
+        return null;
+    }
+
+    public double getStartTime() {
+        return startTime;
+    }
+
+    @NotNull
+    @Override
+    public String toString() {
+        return "FrameServerExecuteTask{" + video.getName() + " from " + startTime + "}";
+    }
+
+}
@@ -1,8 +1,11 @@
 package media;
 
 import com.getting.util.executor.ExecuteTask;
+import com.getting.util.ffmpeg.FfmpegUtil;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.awt.*;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -14,6 +17,10 @@ public class GifConvertExecuteTask extends ExecuteTask {
 
     private final boolean reverse;
 
+    /**
+     * Null or blank for no logo
+     */
+    @Nullable
     private final String logo;
 
     private final File video;
@@ -26,7 +33,72 @@ public class GifConvertExecuteTask extends ExecuteTask {
 
     private final double convertDuration;
 
+    /**
+     * Use a palette generated for this clip instead of the default global palette
+     */
+    private final boolean usePalette;
+
+    @NotNull
+    private final OutputFormat outputFormat;
+
+    /**
+     * Created on first use, they read the video file to build their cache keys
+     */
+    @Nullable
+    private PaletteExecuteTask paletteTask;
+
+    @Nullable
+    private SegmentExecuteTask segmentTask;
+
+    @Nullable
+    private ReverseSegmentExecuteTask reverseSegmentTask;
+
+    /**
+     * Decoded file of exactly the range to read instead of seeking the video, like {@link SegmentExecuteTask}
+     */
+    @Nullable
+    private File decodedInput;
+
+    /**
+     * {@link #decodedInput} is reversed already
+     */
+    private boolean decodedInputReversed;
+
+    /**
+     * Write gif to standard output instead of {@link #getOutputFile()}
+     */
+    private boolean streamOutput;
+
+    /**
+     * Write raw rgb24 frames of this size to standard output instead of gif, for {@link GifConverter.Encoder#JAVA}
+     */
+    @Nullable
+    private Point rawOutputSize;
+
+    /**
+     * Positive if this is a small preview not wider than it
+     */
+    private final int previewMaxWidth;
+
     public GifConvertExecuteTask(File video, double outputFrameRate, double outputScale, double convertStartTime, double convertDuration, boolean reverse, String logo) {
+        this(video, outputFrameRate, outputScale, convertStartTime, convertDuration, reverse, logo, false);
+    }
+
+    /**
+     * @param usePalette two pass conversion, better colors and smaller output, see {@link PaletteExecuteTask}
+     */
+    public GifConvertExecuteTask(File video, double outputFrameRate, double outputScale, double convertStartTime, double convertDuration, boolean reverse, String logo, boolean usePalette) {
+        this(video, outputFrameRate, outputScale, convertStartTime, convertDuration, reverse, logo, usePalette, OutputFormat.GIF);
+    }
+
+    /**
+     * @param usePalette only used by formats supporting it, see {@link OutputFormat#isPaletteSupported()}
+     */
+    public GifConvertExecuteTask(File video, double outputFrameRate, double outputScale, double convertStartTime, double convertDuration, boolean reverse, String logo, boolean usePalette, @NotNull OutputFormat outputFormat) {
+        this(video, outputFrameRate, outputScale, convertStartTime, convertDuration, reverse, logo, usePalette, outputFormat, 0);
+    }
+
+    private GifConvertExecuteTask(File video, double outputFrameRate, double outputScale, double convertStartTime, double convertDuration, boolean reverse, String logo, boolean usePalette, @NotNull OutputFormat outputFormat, int previewMaxWidth) {
         this.video = video;
         this.outputFrameRate = outputFrameRate;
         this.outputScale = outputScale;
@@ -34,12 +106,141 @@ public class GifConvertExecuteTask extends ExecuteTask {
         this.convertDuration = convertDuration;
         this.reverse = reverse;
         this.logo = logo;
+        this.usePalette = usePalette;
+        this.outputFormat = outputFormat;
+        this.previewMaxWidth = previewMaxWidth;
+    }
+
+    /**
+     * Same clip encoded fast for preview: gif not wider than maxWidth, default palette
+     */
+    @NotNull
+    public GifConvertExecuteTask toPreview(int maxWidth) {
+        return new GifConvertExecuteTask(video, outputFrameRate, outputScale, convertStartTime, convertDuration, reverse, logo, false, OutputFormat.GIF, maxWidth);
+    }
+
+    @NotNull
+    public OutputFormat getOutputFormat() {
+        return outputFormat;
+    }
+
+    public boolean isPreview() {
+        return previewMaxWidth > 0;
     }
 
     public double getConvertDuration() {
         return convertDuration;
     }
 
+    /**
+     * @return duration of the output, the convert duration cut to at most 30 seconds
+     */
+    public double getOutputDuration() {
+        return Math.min(30, convertDuration);
+    }
+
+    public double getOutputFrameRate() {
+        return outputFrameRate;
+    }
+
+    public double getOutputScale() {
+        return outputScale;
+    }
+
+    public boolean isReverse() {
+        return reverse;
+    }
+
+    /**
+     * @return null or blank for no logo
+     */
+    @Nullable
+    public String getLogo() {
+        return logo;
+    }
+
+    /**
+     * @return positive if this is a preview not wider than it
+     */
+    public int getPreviewMaxWidth() {
+        return previewMaxWidth;
+    }
+
+    /**
+     * @return not null if use a palette generated for this clip
+     */
+    @Nullable
+    public synchronized PaletteExecuteTask getPaletteTask() {
+        if (usePalette && outputFormat.isPaletteSupported() && paletteTask == null) {
+            paletteTask = new PaletteExecuteTask(video, outputScale, convertStartTime, convertDuration);
+        }
+        return paletteTask;
+    }
+
+    @NotNull
+    public synchronized SegmentExecuteTask getSegmentTask() {
+        if (segmentTask == null) {
+            segmentTask = new SegmentExecuteTask(video, convertStartTime, convertDuration);
+        }
+        return segmentTask;
+    }
+
+    /**
+     * @return not null if reverse a long range chunk by chunk instead of buffering all frames, see {@link ReverseSegmentExecuteTask}
+     */
+    @Nullable
+    public synchronized ReverseSegmentExecuteTask getReverseSegmentTask() {
+        if (reverse && ReverseSegmentExecuteTask.isNeeded(convertDuration) && reverseSegmentTask == null) {
+            reverseSegmentTask = new ReverseSegmentExecuteTask(video, convertStartTime, convertDuration);
+        }
+        return reverseSegmentTask;
+    }
+
+    /**
+     * @param decodedInput decoded file of exactly the range, or null to read the video
+     * @param reversed     decodedInput is reversed already, no need of reverse filter
+     */
+    public void setDecodedInput(@Nullable File decodedInput, boolean reversed) {
+        this.decodedInput = decodedInput;
+        this.decodedInputReversed = reversed;
+    }
+
+    public File getVideo() {
+        return video;
+    }
+
+    public double getConvertStartTime() {
+        return convertStartTime;
+    }
+
+    public void setStreamOutput(boolean streamOutput) {
+        this.streamOutput = streamOutput;
+    }
+
+    /**
+     * @param rawOutputSize size of raw frames, see {@link #getOutputSize(FfmpegUtil.VideoInfo)}, or null for gif
+     */
+    public void setRawOutputSize(@Nullable Point rawOutputSize) {
+        this.rawOutputSize = rawOutputSize;
+    }
+
+    /**
+     * @return size of the output frames, the same as the scale filter gives
+     */
+    @NotNull
+    public Point getOutputSize(@NotNull FfmpegUtil.VideoInfo videoInfo) {
+        final Point videoSize = videoInfo.getVideoSize();
+        // ffmpeg rotates the frames as shown
+        final boolean rotated = videoInfo.getRotation() == 90 || videoInfo.getRotation() == 270;
+        final int videoWidth = rotated ? videoSize.y : videoSize.x;
+        final int videoHeight = rotated ? videoSize.x : videoSize.y;
+        if (isPreview()) {
+            final int width = Math.max(1, (int) Math.min(videoWidth * outputScale, previewMaxWidth));
+            return new Point(width, Math.max(2, (int) Math.round((double) videoHeight * width / videoWidth / 2) * 2));
+        }
+        return new Point(Math.max(1, (int) (videoWidth * outputScale)), Math.max(1, (int) (videoHeight * outputScale)));
+    }
+
     /**
      * ffmpeg [global_options] {[input_file_options] -i input_file} ... {[output_file_options] output_file} ...
      */
@@ -48,41 +249,100 @@ public class GifConvertExecuteTask extends ExecuteTask {
     public List<String> buildParameters() {
         List<String> command = new ArrayList<>();
         command.add("-y");
-        command.add("-ss");
-        command.add("" + convertStartTime);
-        command.add("-i");
-        command.add(video.getAbsolutePath());
-        command.add("-i");
-        command.add(new Logo(logo).create().getAbsolutePath());
-
-        if (!reverse) {
+        // progress as key=value lines, see ProgressParser
+        command.add("-nostats");
+        command.add("-progress");
+        if (streamOutput || rawOutputSize != null) {
+            // standard output is taken by the gif, only keep errors in the log
+            command.add("pipe:2");
+            command.add("-loglevel");
+            command.add("error");
+        } else {
+            command.add("pipe:1");
+        }
+
+        final double duration = getOutputDuration();
+        if (decodedInput != null) {
+            command.add("-i");
+            command.add(decodedInput.getAbsolutePath());
+        } else {
+            command.add("-ss");
+            command.add("" + convertStartTime);
+            // as input option, stop reading the video right after the range, reverse never buffers more than it
             command.add("-t");
-            command.add("" + Math.min(30, convertDuration));
+            command.add("" + duration);
+            command.add("-i");
+            command.add(video.getAbsolutePath());
+        }
+
+        int inputIndex = 1;
+        final int logoInputIndex = Logo.isVisible(logo) ? inputIndex++ : -1;
+        if (logoInputIndex > 0) {
+            command.add("-i");
+            command.add(new Logo(logo).create().getAbsolutePath());
+        }
+        // raw frames are quantized by the reader
+        final PaletteExecuteTask paletteTask = rawOutputSize == null ? getPaletteTask() : null;
+        final int paletteInputIndex = paletteTask != null ? inputIndex++ : -1;
+        if (paletteInputIndex > 0) {
+            command.add("-i");
+            command.add(paletteTask.getPaletteFile().getAbsolutePath());
         }
 
         command.add("-r");
         command.add("" + outputFrameRate);
 
         command.add("-filter_complex");
-        String filter = "scale=iw*" + outputScale + ":ih*" + outputScale;
-        if (reverse) {
-            filter += ",trim=end=" + Math.min(30, convertDuration) + ",reverse";
+        String filter = rawOutputSize != null ?
+                "[0:v]scale=" + rawOutputSize.x + ":" + rawOutputSize.y :
+                isPreview() ?
+                "[0:v]scale=w=min(iw*" + outputScale + "\\," + previewMaxWidth + "):h=-2" :
+                "[0:v]scale=iw*" + outputScale + ":ih*" + outputScale;
+        if (reverse && !(decodedInput != null && decodedInputReversed)) {
+            filter += ",reverse";
+        }
+        if (logoInputIndex > 0) {
+            filter += "[video];[video][" + logoInputIndex + ":v]overlay=x=W-w-10:y=H-h-10";
+        }
+        if (paletteInputIndex > 0) {
+            filter += "[frame];[frame][" + paletteInputIndex + ":v]paletteuse=dither=bayer:bayer_scale=5:diff_mode=rectangle";
+        }
+        if (rawOutputSize == null) {
+            filter += outputFormat.getFilter();
         }
-        filter += ",overlay=x=W-w-10:y=H-h-10";
         command.add(filter);
 
-        command.add(getOutputFile().getAbsolutePath());
+        if (rawOutputSize != null) {
+            command.add("-pix_fmt");
+            command.add("rgb24");
+            command.add("-f");
+            command.add("rawvideo");
+            command.add("pipe:1");
+        } else {
+            outputFormat.addEncoderOptions(command, streamOutput);
+            command.add("-f");
+            command.add(outputFormat.getMuxer());
+            command.add(streamOutput ? "pipe:1" : getOutputFile().getAbsolutePath());
+        }
         return command;
     }
 
     @Override
     public File getOutputDirectory() {
-        return getOutputFile().getParentFile();
+        return streamOutput || rawOutputSize != null ? null : getOutputFile().getParentFile();
     }
 
     @NotNull
     public File getOutputFile() {
-        return new File(video.getParent(), video.getName() + ".gif");
+        return new File(video.getParent(), video.getName() + (isPreview() ? ".preview." : ".") + outputFormat.getExtension());
+    }
+
+    /**
+     * Tasks with equal keys give the same output, palette only counts for formats using it, runtime state like {@link #setDecodedInput(File, boolean)} is not part of it
+     */
+    @NotNull
+    public Object getOutputKey() {
+        return Arrays.asList(video, outputFrameRate, outputScale, convertStartTime, convertDuration, reverse, Logo.isVisible(logo) ? logo : null, usePalette && outputFormat.isPaletteSupported(), outputFormat, previewMaxWidth);
     }
 
 }
@@ -1,65 +1,635 @@
 package media;
 
+import com.getting.util.FileCache;
+import com.getting.util.FileUtil;
+import com.getting.util.executor.BinaryProvisioner;
 import com.getting.util.executor.ExecuteResult;
+import com.getting.util.executor.ExecuteTask;
 import com.getting.util.executor.Executor;
+import com.getting.util.executor.ExecutorPool;
+import com.getting.util.ffmpeg.FfmpegProgress;
 import com.getting.util.ffmpeg.FfmpegUtil;
+import com.getting.util.ffmpeg.ProgressParser;
+import com.getting.util.ffmpeg.VideoInfoCache;
 import com.getting.util.ffmpeg.VideoInfoExecuteTask;
+import com.getting.util.gif.GifEncoder;
+import com.getting.util.metrics.Counter;
+import com.getting.util.metrics.Histogram;
+import com.getting.util.metrics.MetricRegistry;
 import javafx.application.Platform;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.SimpleObjectProperty;
-import javafx.beans.value.ChangeListener;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.io.File;
+import java.awt.*;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
 
 public class GifConverter extends Executor {
 
-    private static final String CONVERTER_NAME = "ffmpeg-20170121-d60f090-win64-static.exe";
+    private static final Logger LOGGER = LoggerFactory.getLogger(GifConverter.class);
+
+    static final BinaryProvisioner CONVERTER = new BinaryProvisioner("ffmpeg", GifConverter.class,
+            Collections.singletonMap(BinaryProvisioner.WINDOWS_X86_64, "ffmpeg-20170121-d60f090-win64-static.exe"));
+
+    private static final VideoInfoCache VIDEO_INFO_CACHE = new VideoInfoCache(new FileCache("video-info"), "video-info.cache", 4096);
+
+    /**
+     * Finished outputs of any format by the hash of their video and parameters, the same conversion is never encoded twice
+     */
+    private static final FileCache OUTPUT_CACHE = new FileCache("output");
+
+    private static final long OUTPUT_CACHE_SIZE = 512L * 1024 * 1024;
+
+    private static final Histogram PROBE_TIME = MetricRegistry.getDefault().histogram("gifconvert_probe_seconds", "Time to probe a video not probed before", Histogram.SECONDS_BUCKETS);
+
+    private static final Histogram PREPARE_TIME = MetricRegistry.getDefault().histogram("gifconvert_prepare_seconds", "Time to prepare palette, decoded or reversed segment of a conversion", Histogram.SECONDS_BUCKETS);
+
+    private static final Histogram ENCODE_TIME = MetricRegistry.getDefault().histogram("gifconvert_encode_seconds", "Time to encode the output, by ffmpeg or by the java encoder", Histogram.SECONDS_BUCKETS);
+
+    private static final Histogram ENCODE_SPEED = MetricRegistry.getDefault().histogram("gifconvert_encode_speed", "Encode speed relative to real time reported by ffmpeg, java encoder runs are not included", Histogram.SPEED_BUCKETS);
+
+    private static final Histogram WRITE_TIME = MetricRegistry.getDefault().histogram("gifconvert_write_seconds", "Time to write output besides ffmpeg: copying a cached output out, caching a copy, or waiting on the output stream", Histogram.SECONDS_BUCKETS);
+
+    private static final Histogram OUTPUT_SIZE = MetricRegistry.getDefault().histogram("gifconvert_output_bytes", "Size of each successful gif", Histogram.BYTES_BUCKETS);
+
+    private static final Counter CONVERSIONS = MetricRegistry.getDefault().counter("gifconvert_conversions_total", "Conversions finished in any status");
+
+    private static final Counter CACHE_HITS = MetricRegistry.getDefault().counter("gifconvert_cache_hits_total", "Conversions served from the output cache");
+
+    private static final Counter FAILURES = MetricRegistry.getDefault().counter("gifconvert_failures_total", "Conversions failed");
+
+    private static final Counter CANCELLATIONS = MetricRegistry.getDefault().counter("gifconvert_cancellations_total", "Conversions canceled");
+
+    /**
+     * Quantize and compress frames of {@link Encoder#JAVA} on all cores, shared by all conversions
+     */
+    private static final ForkJoinPool ENCODE_POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Probe with ffprobe if bundled, otherwise with "ffmpeg -i"
+     */
+    private final VideoProber videoProber = new VideoProber();
 
     private final ObjectProperty<FfmpegUtil.VideoInfo> videoInfo = new SimpleObjectProperty<>();
     private final DoubleProperty executeProgress = new SimpleDoubleProperty(Double.NaN);
 
+    private volatile boolean reuseDecodedSegment;
+
+    @NotNull
+    private volatile Encoder encoder = Encoder.FFMPEG;
+
     public GifConverter() {
-        super(GifConverter.class, CONVERTER_NAME);
+        super(CONVERTER);
     }
 
-    public void updateVideoInfo(File file) {
+    /**
+     * @return null if the file can not be probed
+     */
+    @Nullable
+    public FfmpegUtil.VideoInfo updateVideoInfo(File file) {
         updateProgressOnUiThread(Double.NEGATIVE_INFINITY);
-        ExecuteResult result = execute(new VideoInfoExecuteTask(file), true);
+        FfmpegUtil.VideoInfo videoInfo = probe(file);
         updateProgressOnUiThread(Double.NaN);
+        if (videoInfo == null) {
+            return null;
+        }
+
+        updateVideoInfoOnUiThread(videoInfo);
+        return videoInfo;
+    }
+
+    /**
+     * Only start a process if the video was never probed or has changed since
+     */
+    @Nullable
+    public FfmpegUtil.VideoInfo probe(@NotNull File file) {
+        FfmpegUtil.VideoInfo videoInfo = VIDEO_INFO_CACHE.get(file);
+        if (videoInfo != null) {
+            return videoInfo;
+        }
+
+        final long startTime = System.nanoTime();
+        if (videoProber.isExecutorAvailable()) {
+            videoInfo = videoProber.probe(file);
+        }
+        if (videoInfo == null) {
+            final VideoInfoExecuteTask videoInfoTask = new VideoInfoExecuteTask(file);
+            ExecuteResult result = execute(videoInfoTask, false);
+            if (result == null) {
+                return null;
+            }
+            if (result.getStatus() == ExecuteResult.Status.CANCELED) {
+                return null;
+            }
+
+            videoInfo = videoInfoTask.getVideoInfo();
+        }
+        PROBE_TIME.observeNanos(System.nanoTime() - startTime);
+        if (videoInfo != null) {
+            VIDEO_INFO_CACHE.put(file, videoInfo);
+        }
+        return videoInfo;
+    }
+
+    /**
+     * Probe many videos at the same time, known videos are read from cache
+     *
+     * @return info of each video in the same order, null for videos can not be read
+     */
+    @NotNull
+    public Map<File, FfmpegUtil.VideoInfo> probeAll(@NotNull ExecutorPool pool, @NotNull Collection<File> files) {
+        List<Future<FfmpegUtil.VideoInfo>> results = new ArrayList<>(files.size());
+        for (File file : files) {
+            results.add(pool.submit(() -> probe(file)));
+        }
+
+        Map<File, FfmpegUtil.VideoInfo> videoInfos = new LinkedHashMap<>();
+        int index = 0;
+        for (File file : files) {
+            try {
+                videoInfos.put(file, results.get(index++).get());
+            } catch (InterruptedException | ExecutionException e) {
+                LOGGER.error("probeAll", e);
+                videoInfos.put(file, null);
+            }
+        }
+        return videoInfos;
+    }
+
+    public ExecuteResult convert(@NotNull GifConvertExecuteTask parameters) {
+        updateProgressOnUiThread(Double.NEGATIVE_INFINITY);
+        ExecuteResult convertResult = convert(parameters, this::updateProgressOnUiThread);
+        updateProgressOnUiThread(Double.NaN);
+
+        return convertResult;
+    }
+
+    /**
+     * Safe to call from several threads, progress of each conversion is reported to its own listener
+     */
+    public ExecuteResult convert(@NotNull GifConvertExecuteTask parameters, @Nullable DoubleConsumer progressListener) {
+        parameters.setStreamOutput(false);
+        final File cachedOutput = getCachedOutput(parameters);
+        ExecuteResult result = readCachedOutput(cachedOutput, parameters.getOutputFile(), progressListener);
+        if (result == null) {
+            result = prepare(parameters);
+        }
         if (result == null) {
+            result = isEncodedByJava(parameters) ?
+                    encodeFramesAsync(parameters, createProgressLineListener(parameters, progressListener)).join() :
+                    execute(parameters, false, null, createProgressLineListener(parameters, progressListener));
+            recordEncode(result);
+            cacheOutput(result, parameters.getOutputFile(), cachedOutput);
+        }
+
+        recordConversion(result, parameters.getOutputFile().length());
+        return result;
+    }
+
+    @NotNull
+    private File getCachedOutput(@NotNull GifConvertExecuteTask parameters) {
+        // a new ffmpeg may encode differently
+        final Encoder gifEncoder = isEncodedByJava(parameters) ? Encoder.JAVA : Encoder.FFMPEG;
+        return OUTPUT_CACHE.getFile(FileUtil.getFileIdentity(parameters.getVideo()) + "|" + parameters.getOutputKey() + "|" + getExecutorVersion() + "|" + gifEncoder,
+                "." + parameters.getOutputFormat().getExtension());
+    }
+
+    /**
+     * Other formats than gif are always encoded by ffmpeg
+     */
+    private boolean isEncodedByJava(@NotNull GifConvertExecuteTask parameters) {
+        return encoder == Encoder.JAVA && parameters.getOutputFormat() == OutputFormat.GIF;
+    }
+
+    /**
+     * @return result of copying the cached output to the output file, null if not cached
+     */
+    @Nullable
+    private static ExecuteResult readCachedOutput(@NotNull File cachedOutput, @NotNull File outputFile, @Nullable DoubleConsumer progressListener) {
+        if (!cachedOutput.isFile()) {
+            return null;
+        }
+
+        ExecuteResult result = new ExecuteResult();
+        final long startTime = System.nanoTime();
+        try {
+            Files.copy(cachedOutput.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            // deleted by trimToSize meanwhile
+            LOGGER.error("readCachedOutput", e);
+            return null;
+        }
+        WRITE_TIME.observeNanos(System.nanoTime() - startTime);
+        return cacheHit(result, cachedOutput, progressListener);
+    }
+
+    /**
+     * @return result of streaming the cached output, null if not cached
+     */
+    @Nullable
+    private static ExecuteResult readCachedOutput(@NotNull File cachedOutput, @NotNull OutputStream outputStream, @Nullable DoubleConsumer progressListener) {
+        if (!cachedOutput.isFile()) {
+            return null;
+        }
+
+        ExecuteResult result = new ExecuteResult();
+        final byte[] output;
+        try {
+            // read it whole first, outputStream gets nothing if the file is deleted meanwhile
+            output = Files.readAllBytes(cachedOutput.toPath());
+        } catch (IOException e) {
+            LOGGER.error("readCachedOutput", e);
+            return null;
+        }
+
+        final long startTime = System.nanoTime();
+        try {
+            outputStream.write(output);
+            outputStream.flush();
+        } catch (IOException e) {
+            LOGGER.error("readCachedOutput", e);
+            result.setStatus(ExecuteResult.Status.FAIL);
+            return result;
+        }
+        WRITE_TIME.observeNanos(System.nanoTime() - startTime);
+        return cacheHit(result, cachedOutput, progressListener);
+    }
+
+    @NotNull
+    private static ExecuteResult cacheHit(@NotNull ExecuteResult result, @NotNull File cachedOutput, @Nullable DoubleConsumer progressListener) {
+        LOGGER.info("output cache hit " + cachedOutput);
+        CACHE_HITS.increment();
+        OUTPUT_CACHE.touch(cachedOutput);
+        if (progressListener != null) {
+            progressListener.accept(1);
+        }
+        result.setStatus(ExecuteResult.Status.SUCCESS);
+        return result;
+    }
+
+    /**
+     * Keep a copy of the successful conversion
+     */
+    private static void cacheOutput(@Nullable ExecuteResult result, @NotNull File output, @NotNull File cachedOutput) {
+        if (result == null || result.getStatus() != ExecuteResult.Status.SUCCESS) {
             return;
         }
-        if (result.getStatus() == ExecuteResult.Status.CANCELED) {
+
+        final File partFile = OUTPUT_CACHE.getPartFile(cachedOutput);
+        final long startTime = System.nanoTime();
+        try {
+            Files.copy(output.toPath(), partFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOGGER.error("cacheOutput", e);
+            partFile.delete();
             return;
         }
+        WRITE_TIME.observeNanos(System.nanoTime() - startTime);
+        if (OUTPUT_CACHE.commit(partFile, cachedOutput)) {
+            OUTPUT_CACHE.trimToSize(OUTPUT_CACHE_SIZE);
+        }
+    }
 
-        updateVideoInfoOnUiThread(FfmpegUtil.getVideoInfo(result.getMessages()));
+    /**
+     * Generate palette and decoded segment the conversion needs
+     *
+     * @return null if the conversion can start, otherwise the result of the failed preparation
+     */
+    @Nullable
+    private ExecuteResult prepare(@NotNull GifConvertExecuteTask parameters) {
+        final long startTime = System.nanoTime();
+        try {
+            return prepareInput(parameters);
+        } finally {
+            PREPARE_TIME.observeNanos(System.nanoTime() - startTime);
+        }
     }
 
-    public ExecuteResult convert(@NotNull GifConvertExecuteTask parameters) {
-        updateProgressOnUiThread(Double.NEGATIVE_INFINITY);
+    @Nullable
+    private ExecuteResult prepareInput(@NotNull GifConvertExecuteTask parameters) {
+        final PaletteExecuteTask paletteTask = parameters.getPaletteTask();
+        if (paletteTask != null && !isEncodedByJava(parameters)) {
+            ExecuteResult paletteResult = ensureCached(paletteTask);
+            if (paletteResult != null) {
+                return paletteResult;
+            }
+        }
+
+        final ReverseSegmentExecuteTask reverseSegmentTask = parameters.getReverseSegmentTask();
+        if (reverseSegmentTask != null && !parameters.isCanceled()) {
+            ExecuteResult reverseResult = ensureReversed(reverseSegmentTask);
+            if (reverseResult != null) {
+                return reverseResult;
+            }
+            ReverseSegmentExecuteTask.REVERSE_CACHE.trimToSize(ReverseSegmentExecuteTask.REVERSE_CACHE_SIZE);
+            parameters.setDecodedInput(reverseSegmentTask.getReversedFile(), true);
+        } else if (reuseDecodedSegment && !parameters.isCanceled()) {
+            ExecuteResult segmentResult = ensureCached(parameters.getSegmentTask());
+            if (segmentResult != null) {
+                return segmentResult;
+            }
+            SegmentExecuteTask.SEGMENT_CACHE.trimToSize(SegmentExecuteTask.SEGMENT_CACHE_SIZE);
+            parameters.setDecodedInput(parameters.getSegmentTask().getSegmentFile(), false);
+        }
 
-        ChangeListener<String> progressListener = (observable, oldValue, newValue) -> {
-            if (newValue == null) {
+        if (parameters.isCanceled()) {
+            ExecuteResult result = new ExecuteResult();
+            result.setStatus(ExecuteResult.Status.CANCELED);
+            return result;
+        }
+
+        return null;
+    }
+
+    @NotNull
+    private static Consumer<String> createProgressLineListener(@NotNull GifConvertExecuteTask parameters, @Nullable DoubleConsumer progressListener) {
+        final ProgressParser progressParser = new ProgressParser();
+        return line -> {
+            final FfmpegProgress progress = progressParser.feed(line);
+            if (progress == null) {
                 return;
             }
 
-            final FfmpegUtil.Duration duration = FfmpegUtil.getConvertDuration(newValue);
-            if (duration != null) {
-                updateProgressOnUiThread(duration.duration / parameters.getConvertDuration());
+            if (progressListener != null && progress.getOutTime() >= 0) {
+                progressListener.accept(progress.getOutTime() / parameters.getOutputDuration());
+            }
+            if (progress.isEnd() && progress.getSpeed() > 0) {
+                ENCODE_SPEED.observe(progress.getSpeed());
             }
         };
-        executorOutputMessage.addListener(progressListener);
-        ExecuteResult convertResult = execute(parameters, false);
-        executorOutputMessage.removeListener(progressListener);
+    }
+
+    private static void recordEncode(@Nullable ExecuteResult result) {
+        if (result != null) {
+            ENCODE_TIME.observeNanos(result.getCostNanoTime());
+        }
+    }
+
+    /**
+     * Count the conversion by its status, the output size only for a success
+     */
+    private static void recordConversion(@Nullable ExecuteResult result, long outputSize) {
+        CONVERSIONS.increment();
+        if (result == null || result.getStatus() == ExecuteResult.Status.FAIL) {
+            FAILURES.increment();
+        } else if (result.getStatus() == ExecuteResult.Status.CANCELED) {
+            CANCELLATIONS.increment();
+        } else {
+            OUTPUT_SIZE.observe(outputSize);
+        }
+    }
+
+    /**
+     * @return null if the cached file is ready, otherwise the result of the failed execution
+     */
+    @Nullable
+    private ExecuteResult ensureCached(@NotNull CacheExecuteTask cacheTask) {
+        if (cacheTask.isCached()) {
+            cacheTask.touch();
+            return null;
+        }
+
+        ExecuteResult result = execute(cacheTask, false);
+        if (result == null) {
+            cacheTask.discard();
+            result = new ExecuteResult();
+            result.setStatus(ExecuteResult.Status.FAIL);
+            return result;
+        }
+        if (result.getStatus() != ExecuteResult.Status.SUCCESS) {
+            cacheTask.discard();
+            return result;
+        }
+        if (!cacheTask.commit()) {
+            result.setStatus(ExecuteResult.Status.FAIL);
+            return result;
+        }
+
+        return null;
+    }
+
+    /**
+     * Reverse chunk by chunk, then join them
+     *
+     * @return null if the reversed segment is ready, otherwise the result of the failed execution
+     */
+    @Nullable
+    private ExecuteResult ensureReversed(@NotNull ReverseSegmentExecuteTask reverseSegmentTask) {
+        if (reverseSegmentTask.isCached()) {
+            reverseSegmentTask.touch();
+            return null;
+        }
+
+        try {
+            for (ReverseChunkExecuteTask chunkTask : reverseSegmentTask.getChunkTasks()) {
+                ExecuteResult chunkResult = execute(chunkTask, false);
+                if (chunkResult == null || chunkResult.getStatus() != ExecuteResult.Status.SUCCESS) {
+                    if (chunkResult == null) {
+                        chunkResult = new ExecuteResult();
+                        chunkResult.setStatus(ExecuteResult.Status.FAIL);
+                    }
+                    return chunkResult;
+                }
+            }
+
+            try {
+                reverseSegmentTask.writeChunkList();
+            } catch (IOException e) {
+                LOGGER.error("ensureReversed", e);
+                ExecuteResult result = new ExecuteResult();
+                result.setStatus(ExecuteResult.Status.FAIL);
+                return result;
+            }
+
+            return ensureCached(reverseSegmentTask);
+        } finally {
+            reverseSegmentTask.deleteChunks();
+        }
+    }
+
+    /**
+     * Keep a lossless decoded segment of the selected range, so that changing only frame rate, scale, reverse or logo
+     * does not decode the video again. Good for interactive preview, useless for one time conversions.
+     */
+    public void setReuseDecodedSegment(boolean reuseDecodedSegment) {
+        this.reuseDecodedSegment = reuseDecodedSegment;
+    }
+
+    /**
+     * @param encoder how later conversions write the gif, ffmpeg by default
+     */
+    public void setEncoder(@NotNull Encoder encoder) {
+        this.encoder = encoder;
+    }
+
+    /**
+     * Write {@link GifConvertExecuteTask#getOutputFile()} with {@link Encoder#JAVA}
+     *
+     * @return completed with null if the output file or the process can not be opened
+     */
+    @NotNull
+    private CompletableFuture<ExecuteResult> encodeFramesAsync(@NotNull GifConvertExecuteTask parameters, @Nullable Consumer<String> progressLineListener) {
+        final OutputStream outputStream;
+        try {
+            outputStream = new BufferedOutputStream(new FileOutputStream(parameters.getOutputFile()), 64 * 1024);
+        } catch (FileNotFoundException e) {
+            LOGGER.error("encodeFramesAsync", e);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return encodeFramesAsync(parameters, outputStream, progressLineListener).whenComplete((result, throwable) -> {
+            try {
+                outputStream.close();
+            } catch (IOException e) {
+                LOGGER.error("encodeFramesAsync", e);
+            }
+        });
+    }
+
+    /**
+     * Decode the clip to raw frames with ffmpeg and encode them with {@link GifEncoder} as they come: ffmpeg decodes
+     * and scales, the pipe blocks it while frames wait in the encoder, frames are encoded on {@link #ENCODE_POOL}
+     *
+     * @return completed with null if the video can not be probed or the process can not run
+     */
+    @NotNull
+    private CompletableFuture<ExecuteResult> encodeFramesAsync(@NotNull GifConvertExecuteTask parameters, @NotNull OutputStream outputStream, @Nullable Consumer<String> progressLineListener) {
+        final FfmpegUtil.VideoInfo videoInfo = probe(parameters.getVideo());
+        if (videoInfo == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        final Point size = parameters.getOutputSize(videoInfo);
+        parameters.setRawOutputSize(size);
+        // progress comes with error output when standard output is taken by the frames
+        return executeAsync(parameters, inputStream -> encodeFrames(inputStream, outputStream, size, parameters.getOutputFrameRate()), progressLineListener);
+    }
+
+    private static void encodeFrames(@NotNull InputStream inputStream, @NotNull OutputStream outputStream, @NotNull Point size, double frameRate) {
+        final byte[] frame = new byte[size.x * size.y * 3];
+        final GifEncoder gifEncoder = new GifEncoder(outputStream, size.x, size.y, GifEncoder.DEFAULT_TOLERANCE, ENCODE_POOL);
+        try (DataInputStream input = new DataInputStream(inputStream)) {
+            while (true) {
+                try {
+                    input.readFully(frame);
+                } catch (EOFException e) {
+                    break;
+                }
+
+                // delays in 1/100 second add up to the frame times instead of drifting
+                final int index = gifEncoder.getFrameCount();
+                gifEncoder.addFrame(frame, (int) Math.round((index + 1) * 100 / frameRate) - (int) Math.round(index * 100 / frameRate));
+            }
+
+            if (gifEncoder.getFrameCount() == 0) {
+                throw new IOException("no frame decoded");
+            }
+            gifEncoder.finish();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Also cancel probing with ffprobe
+     */
+    @Override
+    public void cancel() {
+        super.cancel();
+        videoProber.cancel();
+    }
+
+    /**
+     * Also cancel the palette generation, segment decoding and chunk reversing of the conversion
+     */
+    @Override
+    public void cancel(@NotNull ExecuteTask executeTask) {
+        if (executeTask instanceof GifConvertExecuteTask) {
+            final GifConvertExecuteTask parameters = (GifConvertExecuteTask) executeTask;
+            if (parameters.getPaletteTask() != null) {
+                super.cancel(parameters.getPaletteTask());
+            }
+            super.cancel(parameters.getSegmentTask());
+            if (parameters.getReverseSegmentTask() != null) {
+                for (ReverseChunkExecuteTask chunkTask : parameters.getReverseSegmentTask().getChunkTasks()) {
+                    super.cancel(chunkTask);
+                }
+                super.cancel(parameters.getReverseSegmentTask());
+            }
+        }
+        super.cancel(executeTask);
+    }
+
+    public ExecuteResult convert(@NotNull GifConvertExecuteTask parameters, @NotNull OutputStream outputStream) {
+        updateProgressOnUiThread(Double.NEGATIVE_INFINITY);
+        ExecuteResult convertResult = convert(parameters, outputStream, this::updateProgressOnUiThread);
         updateProgressOnUiThread(Double.NaN);
 
         return convertResult;
     }
 
+    /**
+     * Stream the gif to outputStream, for example a http response, instead of writing {@link GifConvertExecuteTask#getOutputFile()}
+     */
+    public ExecuteResult convert(@NotNull GifConvertExecuteTask parameters, @NotNull OutputStream outputStream, @Nullable DoubleConsumer progressListener) {
+        parameters.setStreamOutput(true);
+        final File cachedOutput = getCachedOutput(parameters);
+        ExecuteResult result = readCachedOutput(cachedOutput, outputStream, progressListener);
+        if (result != null) {
+            recordConversion(result, cachedOutput.length());
+            return result;
+        }
+
+        result = prepare(parameters);
+        if (result != null) {
+            recordConversion(result, 0);
+            return result;
+        }
+
+        // keep a copy of the stream, the conversion is cached like a file one
+        final File partFile = OUTPUT_CACHE.getPartFile(cachedOutput);
+        try (CachingOutputStream cachingOutputStream = new CachingOutputStream(outputStream, partFile)) {
+            // progress comes with error output when standard output is taken by the gif
+            result = isEncodedByJava(parameters) ?
+                    encodeFramesAsync(parameters, cachingOutputStream, createProgressLineListener(parameters, progressListener)).join() :
+                    execute(parameters, cachingOutputStream, createProgressLineListener(parameters, progressListener));
+            recordEncode(result);
+            WRITE_TIME.observeNanos(cachingOutputStream.getWriteNanoTime());
+            recordConversion(result, cachingOutputStream.getByteCount());
+            if (result != null && result.getStatus() == ExecuteResult.Status.SUCCESS && cachingOutputStream.finishCopy()) {
+                if (OUTPUT_CACHE.commit(partFile, cachedOutput)) {
+                    OUTPUT_CACHE.trimToSize(OUTPUT_CACHE_SIZE);
+                }
+            }
+        }
+        partFile.delete();
+        return result;
+    }
+
+    @NotNull
+    public Future<ExecuteResult> submit(@NotNull ExecutorPool pool, @NotNull GifConvertExecuteTask parameters, @Nullable DoubleConsumer progressListener) {
+        return pool.submit(() -> convert(parameters, progressListener));
+    }
+
     @NotNull
     public ObjectProperty<FfmpegUtil.VideoInfo> videoInfoProperty() {
         return videoInfo;
@@ -82,4 +652,139 @@ public class GifConverter extends Executor {
         return executeProgress;
     }
 
+    /**
+     * How the gif is encoded, ffmpeg decodes the video either way
+     */
+    public enum Encoder {
+
+        /**
+         * ffmpeg gif muxer, with palette generated for the clip if asked
+         */
+        FFMPEG,
+
+        /**
+         * {@link GifEncoder} of raw frames from ffmpeg, a palette for each frame and only the changed part of it
+         */
+        JAVA
+
+    }
+
+    /**
+     * Write to the target and a copy file, the copy is given up on error without failing the target
+     */
+    private static final class CachingOutputStream extends OutputStream {
+
+        @NotNull
+        private final OutputStream target;
+
+        @NotNull
+        private final File copyFile;
+
+        @Nullable
+        private OutputStream copy;
+
+        private long byteCount;
+
+        /**
+         * Time blocked writing to the target, a slow client shows here instead of as slow encoding
+         */
+        private long writeNanoTime;
+
+        private CachingOutputStream(@NotNull OutputStream target, @NotNull File copyFile) {
+            this.target = target;
+            this.copyFile = copyFile;
+            try {
+                copy = new BufferedOutputStream(new FileOutputStream(copyFile));
+            } catch (IOException e) {
+                LOGGER.error("CachingOutputStream", e);
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            final long startTime = System.nanoTime();
+            target.write(b);
+            writeNanoTime += System.nanoTime() - startTime;
+            byteCount++;
+            if (copy != null) {
+                try {
+                    copy.write(b);
+                } catch (IOException e) {
+                    giveUpCopy(e);
+                }
+            }
+        }
+
+        @Override
+        public void write(@NotNull byte[] b, int off, int len) throws IOException {
+            final long startTime = System.nanoTime();
+            target.write(b, off, len);
+            writeNanoTime += System.nanoTime() - startTime;
+            byteCount += len;
+            if (copy != null) {
+                try {
+                    copy.write(b, off, len);
+                } catch (IOException e) {
+                    giveUpCopy(e);
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            final long startTime = System.nanoTime();
+            target.flush();
+            writeNanoTime += System.nanoTime() - startTime;
+        }
+
+        private long getByteCount() {
+            return byteCount;
+        }
+
+        private long getWriteNanoTime() {
+            return writeNanoTime;
+        }
+
+        /**
+         * @return true if the copy file is complete
+         */
+        private boolean finishCopy() {
+            if (copy == null) {
+                return false;
+            }
+
+            try {
+                copy.close();
+                copy = null;
+                return true;
+            } catch (IOException e) {
+                giveUpCopy(e);
+                return false;
+            }
+        }
+
+        private void giveUpCopy(@NotNull IOException e) {
+            LOGGER.error("copy " + copyFile, e);
+            close();
+        }
+
+        /**
+         * Close the copy only, the target belongs to the caller
+         */
+        @Override
+        public void close() {
+            if (copy == null) {
+                return;
+            }
+
+            try {
+                copy.close();
+            } catch (IOException e) {
+                LOGGER.error("close", e);
+            }
+            copy = null;
+        }
+
+    }
+
 }
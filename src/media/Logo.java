@@ -1,5 +1,8 @@
 package media;
 
+import com.getting.util.FileCache;
+import com.getting.util.metrics.Histogram;
+import com.getting.util.metrics.MetricRegistry;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -9,32 +12,120 @@ import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class Logo {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Logo.class);
 
+    private static final String DEFAULT_FONT_NAME = "微软雅黑";
+
+    private static final int DEFAULT_FONT_SIZE = 15;
+
+    /**
+     * Rendered once for each text, font and size. File name is the hash of them, so parallel conversions never
+     * overwrite each other's logo.
+     */
+    private static final FileCache LOGO_CACHE = new FileCache("logo");
+
+    /**
+     * Logos hold a time, a new one is rendered every minute
+     */
+    private static final long LOGO_CACHE_SIZE = 8L * 1024 * 1024;
+
+    private static final int LOGO_FILES_CAPACITY = 64;
+
+    /**
+     * Recently created logo files, only those written successfully
+     */
+    private static final Map<String, File> LOGO_FILES = new LinkedHashMap<String, File>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, File> eldest) {
+            return size() > LOGO_FILES_CAPACITY;
+        }
+    };
+
+    private static final Histogram RENDER_TIME = MetricRegistry.getDefault().histogram("gifconvert_logo_render_seconds", "Time to render a logo not rendered before", Histogram.SECONDS_BUCKETS);
+
     private final String logo;
 
+    private final String fontName;
+
+    private final int fontSize;
+
     public Logo(String logo) {
+        this(logo, DEFAULT_FONT_NAME, DEFAULT_FONT_SIZE);
+    }
+
+    public Logo(String logo, String fontName, int fontSize) {
         this.logo = logo;
+        this.fontName = fontName;
+        this.fontSize = fontSize;
     }
 
+    /**
+     * @return false for null or blank text, which needs no overlay at all
+     */
+    public static boolean isVisible(String logo) {
+        return logo != null && !logo.trim().isEmpty();
+    }
+
+    /**
+     * @return the png, which may not exist if it can not be written
+     */
     @NotNull
     public File create() {
-        File logoFile = new File(System.getProperty("java.io.tmpdir"), "ffmpeg-logo.png");
-        Font font = new Font("微软雅黑", Font.PLAIN, 15);
-        FontMetrics fontMetrics = new Canvas().getFontMetrics(font);
-        BufferedImage bufferedImage = new BufferedImage(fontMetrics.stringWidth(logo), fontMetrics.getAscent() + fontMetrics.getDescent(), BufferedImage.TYPE_INT_ARGB);
-        Graphics graphics = bufferedImage.getGraphics();
+        final String key = logo + "|" + fontName + "|" + fontSize;
+        File logoFile;
+        synchronized (LOGO_FILES) {
+            logoFile = LOGO_FILES.get(key);
+        }
+        // deleted by trimToSize or by hand meanwhile
+        if (logoFile != null && logoFile.isFile()) {
+            return logoFile;
+        }
+
+        logoFile = render(key);
+        if (logoFile.isFile()) {
+            synchronized (LOGO_FILES) {
+                LOGO_FILES.put(key, logoFile);
+            }
+        }
+        return logoFile;
+    }
+
+    @NotNull
+    private File render(@NotNull String key) {
+        File logoFile = LOGO_CACHE.getFile(key, ".png");
+        if (logoFile.isFile()) {
+            LOGO_CACHE.touch(logoFile);
+            return logoFile;
+        }
+
+        final long startTime = System.nanoTime();
+        Font font = new Font(fontName, Font.PLAIN, fontSize);
+        // measure with an image instead of a Canvas, works without display
+        Graphics2D measureGraphics = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+        FontMetrics fontMetrics = measureGraphics.getFontMetrics(font);
+        measureGraphics.dispose();
+        BufferedImage bufferedImage = new BufferedImage(Math.max(1, fontMetrics.stringWidth(logo)), fontMetrics.getAscent() + fontMetrics.getDescent(), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = bufferedImage.createGraphics();
         graphics.setFont(font);
         graphics.setColor(Color.WHITE);
         graphics.drawString(logo, 0, fontMetrics.getAscent());
+        graphics.dispose();
+
+        File partFile = LOGO_CACHE.getPartFile(logoFile);
         try {
-            ImageIO.write(bufferedImage, "png", logoFile);
+            ImageIO.write(bufferedImage, "png", partFile);
+            LOGO_CACHE.commit(partFile, logoFile);
         } catch (IOException e) {
             LOGGER.error("create", e);
+            partFile.delete();
         }
+        RENDER_TIME.observeNanos(System.nanoTime() - startTime);
+        LOGO_CACHE.trimToSize(LOGO_CACHE_SIZE);
         return logoFile;
     }
 
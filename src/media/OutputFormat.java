@@ -0,0 +1,116 @@
+package media;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Animation formats a clip can be converted to. Time range, scale, reverse and logo are the same for all of them,
+ * each format adds its own encoder options to the command, see {@link GifConvertExecuteTask#buildParameters()}.
+ */
+public enum OutputFormat {
+
+    /**
+     * Plays everywhere, largest and slowest, the only format of previews
+     */
+    GIF("gif", "gif") {
+        @Override
+        public void addEncoderOptions(@NotNull List<String> command, boolean streamOutput) {
+            // the gif muxer loops forever by default
+        }
+
+        @Override
+        public boolean isPaletteSupported() {
+            return true;
+        }
+    },
+
+    /**
+     * Animated WebP, lossy
+     */
+    WEBP("webp", "webp") {
+        @Override
+        public void addEncoderOptions(@NotNull List<String> command, boolean streamOutput) {
+            Collections.addAll(command, "-c:v", "libwebp", "-lossless", "0", "-quality", "75", "-compression_level", "4", "-loop", "0");
+        }
+    },
+
+    /**
+     * Animated PNG, lossless, named .png so browsers show it
+     */
+    APNG("png", "apng") {
+        @Override
+        public void addEncoderOptions(@NotNull List<String> command, boolean streamOutput) {
+            Collections.addAll(command, "-c:v", "apng", "-pred", "mixed", "-plays", "0");
+        }
+    },
+
+    /**
+     * Silent H.264, looped by the player
+     */
+    MP4("mp4", "mp4") {
+        @Override
+        public void addEncoderOptions(@NotNull List<String> command, boolean streamOutput) {
+            Collections.addAll(command, "-c:v", "libx264", "-preset", "veryfast", "-crf", "23", "-pix_fmt", "yuv420p", "-an",
+                    // a pipe can not be seeked back to write the index at the beginning
+                    "-movflags", streamOutput ? "+frag_keyframe+empty_moov+default_base_moof" : "+faststart");
+        }
+
+        @NotNull
+        @Override
+        public String getFilter() {
+            // yuv420p needs even width and height
+            return ",crop=trunc(iw/2)*2:trunc(ih/2)*2";
+        }
+    };
+
+    @NotNull
+    private final String extension;
+
+    @NotNull
+    private final String muxer;
+
+    OutputFormat(@NotNull String extension, @NotNull String muxer) {
+        this.extension = extension;
+        this.muxer = muxer;
+    }
+
+    /**
+     * @param command      add output options before the output file
+     * @param streamOutput output is written to a pipe instead of a file
+     */
+    public abstract void addEncoderOptions(@NotNull List<String> command, boolean streamOutput);
+
+    /**
+     * @return appended to the filter chain after scale, reverse and logo
+     */
+    @NotNull
+    public String getFilter() {
+        return "";
+    }
+
+    /**
+     * @return whether a palette generated for the clip improves it, see {@link PaletteExecuteTask}
+     */
+    public boolean isPaletteSupported() {
+        return false;
+    }
+
+    /**
+     * @return file name extension without dot
+     */
+    @NotNull
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * @return ffmpeg -f value
+     */
+    @NotNull
+    public String getMuxer() {
+        return muxer;
+    }
+
+}
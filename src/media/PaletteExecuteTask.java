@@ -0,0 +1,57 @@
+package media;
+
+import com.getting.util.FileCache;
+import com.getting.util.FileUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * First pass of high quality conversion, analyse the clip and generate its own 256 colors palette
+ */
+public class PaletteExecuteTask extends CacheExecuteTask {
+
+    private static final FileCache PALETTE_CACHE = new FileCache("palette");
+
+    private final File video;
+
+    private final double outputScale;
+
+    private final double convertStartTime;
+
+    private final double convertDuration;
+
+    public PaletteExecuteTask(@NotNull File video, double outputScale, double convertStartTime, double convertDuration) {
+        // frame rate, reverse and logo do not change colors of the clip, so they are not part of the key
+        super(PALETTE_CACHE, FileUtil.getFileIdentity(video) + "|" + convertStartTime + "|" + convertDuration + "|" + outputScale, ".png");
+        this.video = video;
+        this.outputScale = outputScale;
+        this.convertStartTime = convertStartTime;
+        this.convertDuration = convertDuration;
+    }
+
+    @NotNull
+    @Override
+    public List<String> buildParameters() {
+        List<String> command = new ArrayList<>();
+        command.add("-y");
+        command.add("-ss");
+        command.add("" + convertStartTime);
+        command.add("-t");
+        command.add("" + Math.min(30, convertDuration));
+        command.add("-i");
+        command.add(video.getAbsolutePath());
+        command.add("-vf");
+        command.add("scale=iw*" + outputScale + ":ih*" + outputScale + ",palettegen=stats_mode=diff");
+        command.add(getPartFile().getAbsolutePath());
+        return command;
+    }
+
+    @NotNull
+    public File getPaletteFile() {
+        return getCacheFile();
+    }
+
+}
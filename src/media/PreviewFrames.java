@@ -0,0 +1,77 @@
+package media;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Rendered frames of a preview, filled by {@link FrameServer#renderPreview(GifConvertExecuteTask, PreviewFrames)}.
+ * Frames are kept as rgb24 and written into one image when shown, instead of holding an image per frame.
+ */
+public class PreviewFrames {
+
+    private final List<byte[]> frames = new ArrayList<>();
+
+    private int width;
+
+    private int height;
+
+    /**
+     * Each kept frame is shown this many times, more than once if keeping all frames would be too large
+     */
+    private int repeat = 1;
+
+    @Nullable
+    private WritableImage image;
+
+    void reset(int width, int height, int repeat) {
+        frames.clear();
+        this.width = width;
+        this.height = height;
+        this.repeat = repeat;
+        image = null;
+    }
+
+    /**
+     * @param rgb width * height * 3 bytes, row by row
+     */
+    void add(@NotNull byte[] rgb) {
+        frames.add(rgb);
+    }
+
+    void reverse() {
+        Collections.reverse(frames);
+    }
+
+    public boolean isEmpty() {
+        return frames.isEmpty();
+    }
+
+    /**
+     * @return frames shown in one loop
+     */
+    public int size() {
+        return frames.size() * repeat;
+    }
+
+    /**
+     * Write the frame into the image, which is the same for all frames, only on ui thread
+     *
+     * @param index 0 to {@link #size()} - 1
+     */
+    @NotNull
+    public Image show(int index) {
+        if (image == null) {
+            image = new WritableImage(width, height);
+        }
+        image.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getByteRgbInstance(), frames.get(index / repeat), 0, width * 3);
+        return image;
+    }
+
+}
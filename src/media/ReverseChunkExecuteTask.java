@@ -0,0 +1,65 @@
+package media;
+
+import com.getting.util.executor.ExecuteTask;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reverse one short chunk of the video into a lossless file, reverse filter only buffers frames of this chunk
+ */
+public class ReverseChunkExecuteTask extends ExecuteTask {
+
+    private final File video;
+
+    private final double chunkStartTime;
+
+    private final double chunkDuration;
+
+    @NotNull
+    private final File outputFile;
+
+    public ReverseChunkExecuteTask(@NotNull File video, double chunkStartTime, double chunkDuration, @NotNull File outputFile) {
+        this.video = video;
+        this.chunkStartTime = chunkStartTime;
+        this.chunkDuration = chunkDuration;
+        this.outputFile = outputFile;
+    }
+
+    @NotNull
+    @Override
+    public List<String> buildParameters() {
+        List<String> command = new ArrayList<>();
+        command.add("-y");
+        command.add("-ss");
+        command.add("" + chunkStartTime);
+        command.add("-t");
+        command.add("" + chunkDuration);
+        command.add("-i");
+        command.add(video.getAbsolutePath());
+        command.add("-an");
+        command.add("-vf");
+        command.add("reverse");
+        command.add("-c:v");
+        command.add("libx264");
+        command.add("-preset");
+        command.add("ultrafast");
+        command.add("-qp");
+        command.add("0");
+        command.add(outputFile.getAbsolutePath());
+        return command;
+    }
+
+    @Override
+    public File getOutputDirectory() {
+        return outputFile.getParentFile();
+    }
+
+    @NotNull
+    public File getOutputFile() {
+        return outputFile;
+    }
+
+}
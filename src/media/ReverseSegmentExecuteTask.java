@@ -0,0 +1,105 @@
+package media;
+
+import com.getting.util.FileCache;
+import com.getting.util.FileUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reverse a long range with bounded memory: every {@link ReverseChunkExecuteTask} reverses a short chunk,
+ * this task joins the chunks in reverse order without encoding again.
+ */
+public class ReverseSegmentExecuteTask extends CacheExecuteTask {
+
+    public static final FileCache REVERSE_CACHE = new FileCache("reverse");
+
+    public static final long REVERSE_CACHE_SIZE = 1024L * 1024 * 1024;
+
+    /**
+     * Frames of one chunk are kept in memory while reversing, 2 seconds of 1080p is about 200MB
+     */
+    public static final double CHUNK_DURATION = 2;
+
+    @NotNull
+    private final List<ReverseChunkExecuteTask> chunkTasks = new ArrayList<>();
+
+    @NotNull
+    private final File chunkListFile;
+
+    public ReverseSegmentExecuteTask(@NotNull File video, double convertStartTime, double convertDuration) {
+        super(REVERSE_CACHE, FileUtil.getFileIdentity(video) + "|" + convertStartTime + "|" + convertDuration, ".mkv");
+        final double duration = Math.min(30, convertDuration);
+        final int chunkCount = (int) Math.ceil(duration / CHUNK_DURATION);
+        for (int i = 0; i < chunkCount; i++) {
+            final double chunkStartTime = convertStartTime + i * CHUNK_DURATION;
+            final double chunkDuration = Math.min(CHUNK_DURATION, duration - i * CHUNK_DURATION);
+            chunkTasks.add(new ReverseChunkExecuteTask(video, chunkStartTime, chunkDuration, REVERSE_CACHE.getPartFile(new File(i + ".mkv"))));
+        }
+        chunkListFile = REVERSE_CACHE.getPartFile(new File("chunks.txt"));
+    }
+
+    /**
+     * Only needed if the range is longer than one chunk
+     */
+    public static boolean isNeeded(double convertDuration) {
+        return Math.min(30, convertDuration) > CHUNK_DURATION;
+    }
+
+    @NotNull
+    public List<ReverseChunkExecuteTask> getChunkTasks() {
+        return chunkTasks;
+    }
+
+    /**
+     * List chunks for the concat demuxer, last chunk first
+     */
+    public void writeChunkList() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (ReverseChunkExecuteTask chunkTask : chunkTasks) {
+            lines.add("file '" + chunkTask.getOutputFile().getAbsolutePath().replace('\\', '/').replace("'", "'\\''") + "'");
+        }
+        Collections.reverse(lines);
+        Files.write(chunkListFile.toPath(), lines, StandardCharsets.UTF_8);
+    }
+
+    public void deleteChunks() {
+        for (ReverseChunkExecuteTask chunkTask : chunkTasks) {
+            if (chunkTask.getOutputFile().exists() && !chunkTask.getOutputFile().delete()) {
+                chunkTask.getOutputFile().deleteOnExit();
+            }
+        }
+        if (chunkListFile.exists() && !chunkListFile.delete()) {
+            chunkListFile.deleteOnExit();
+        }
+    }
+
+    @NotNull
+    @Override
+    public List<String> buildParameters() {
+        List<String> command = new ArrayList<>();
+        command.add("-y");
+        command.add("-f");
+        command.add("concat");
+        command.add("-safe");
+        command.add("0");
+        command.add("-i");
+        command.add(chunkListFile.getAbsolutePath());
+        command.add("-c");
+        command.add("copy");
+        command.add(getPartFile().getAbsolutePath());
+        return command;
+    }
+
+    @NotNull
+    public File getReversedFile() {
+        return getCacheFile();
+    }
+
+}
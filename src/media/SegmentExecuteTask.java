@@ -0,0 +1,64 @@
+package media;
+
+import com.getting.util.FileCache;
+import com.getting.util.FileUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decode the selected range of the video once into a lossless segment,
+ * later conversions of the same range only need to filter and encode it.
+ */
+public class SegmentExecuteTask extends CacheExecuteTask {
+
+    public static final FileCache SEGMENT_CACHE = new FileCache("segment");
+
+    /**
+     * Lossless 1080p segments are large, keep only the recently used ones
+     */
+    public static final long SEGMENT_CACHE_SIZE = 1024L * 1024 * 1024;
+
+    private final File video;
+
+    private final double convertStartTime;
+
+    private final double convertDuration;
+
+    public SegmentExecuteTask(@NotNull File video, double convertStartTime, double convertDuration) {
+        super(SEGMENT_CACHE, FileUtil.getFileIdentity(video) + "|" + convertStartTime + "|" + convertDuration, ".mkv");
+        this.video = video;
+        this.convertStartTime = convertStartTime;
+        this.convertDuration = convertDuration;
+    }
+
+    @NotNull
+    @Override
+    public List<String> buildParameters() {
+        List<String> command = new ArrayList<>();
+        command.add("-y");
+        command.add("-ss");
+        command.add("" + convertStartTime);
+        command.add("-t");
+        command.add("" + Math.min(30, convertDuration));
+        command.add("-i");
+        command.add(video.getAbsolutePath());
+        command.add("-an");
+        command.add("-c:v");
+        command.add("libx264");
+        command.add("-preset");
+        command.add("ultrafast");
+        command.add("-qp");
+        command.add("0");
+        command.add(getPartFile().getAbsolutePath());
+        return command;
+    }
+
+    @NotNull
+    public File getSegmentFile() {
+        return getCacheFile();
+    }
+
+}
@@ -0,0 +1,52 @@
+package media;
+
+import com.getting.util.executor.BinaryProvisioner;
+import com.getting.util.executor.ExecuteResult;
+import com.getting.util.executor.Executor;
+import com.getting.util.ffmpeg.FfmpegUtil;
+import com.getting.util.ffmpeg.FfprobeParser;
+import com.getting.util.ffmpeg.ProbeExecuteTask;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+/**
+ * Probe videos with ffprobe, which prints json and exits with success, instead of scraping "ffmpeg -i" messages.
+ * ffprobe is optional, check {@link #isExecutorAvailable()} first.
+ */
+public class VideoProber extends Executor {
+
+    private static final BinaryProvisioner PROBER = new BinaryProvisioner("ffprobe", VideoProber.class,
+            Collections.singletonMap(BinaryProvisioner.WINDOWS_X86_64, "ffprobe-20170121-d60f090-win64-static.exe"));
+
+    public VideoProber() {
+        super(PROBER);
+    }
+
+    /**
+     * @return null if the video can not be read
+     */
+    @Nullable
+    public FfmpegUtil.VideoInfo probe(@NotNull File video) {
+        final FfmpegUtil.VideoInfo[] videoInfo = new FfmpegUtil.VideoInfo[1];
+        ExecuteResult result = execute(new ProbeExecuteTask(video), inputStream -> {
+            try {
+                videoInfo[0] = FfprobeParser.parse(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, null);
+        if (result == null || result.getStatus() != ExecuteResult.Status.SUCCESS) {
+            return null;
+        }
+
+        return videoInfo[0];
+    }
+
+}
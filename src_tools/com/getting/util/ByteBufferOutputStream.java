@@ -0,0 +1,44 @@
+package com.getting.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Write into a caller supplied buffer, fail when it is full
+ */
+public class ByteBufferOutputStream extends OutputStream {
+
+    @NotNull
+    private final ByteBuffer buffer;
+
+    public ByteBufferOutputStream(@NotNull ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (!buffer.hasRemaining()) {
+            throw new IOException("buffer is full, capacity " + buffer.capacity());
+        }
+
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(@NotNull byte[] bytes, int offset, int length) throws IOException {
+        if (buffer.remaining() < length) {
+            throw new IOException("buffer is full, capacity " + buffer.capacity());
+        }
+
+        buffer.put(bytes, offset, length);
+    }
+
+    @NotNull
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+}
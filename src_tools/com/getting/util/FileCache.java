@@ -0,0 +1,121 @@
+package com.getting.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Files in temp directory named by the hash of their key
+ */
+public class FileCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileCache.class);
+
+    private static final AtomicLong PART_COUNTER = new AtomicLong();
+
+    @NotNull
+    private final File directory;
+
+    public FileCache(@NotNull String name) {
+        directory = new File(new File(System.getProperty("java.io.tmpdir"), "gifconvert"), name);
+    }
+
+    @NotNull
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @param extension like ".png"
+     */
+    @NotNull
+    public File getFile(@NotNull String key, @NotNull String extension) {
+        return new File(directory, sha1(key) + extension);
+    }
+
+    /**
+     * A unique file to write to before {@link #commit(File, File)}, so that a half written file is never visible
+     */
+    @NotNull
+    public File getPartFile(@NotNull File file) {
+        FileUtil.ensureDirectoryAvailable(directory);
+        return new File(directory, Long.toHexString(System.nanoTime()) + "." + PART_COUNTER.incrementAndGet() + ".part" + FileUtil.getFileNameExtension(file));
+    }
+
+    public boolean commit(@NotNull File partFile, @NotNull File file) {
+        try {
+            Files.move(partFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            LOGGER.error("commit", e);
+            partFile.delete();
+            return false;
+        }
+    }
+
+    /**
+     * Mark the file as recently used
+     */
+    public void touch(@NotNull File file) {
+        if (!file.setLastModified(System.currentTimeMillis())) {
+            LOGGER.info("touch " + file + " failed");
+        }
+    }
+
+    /**
+     * Delete least recently used files until total size is not more than maxSize
+     */
+    public void trimToSize(long maxSize) {
+        File[] files = directory.listFiles(file -> file.isFile() && !file.getName().contains(".part"));
+        if (files == null) {
+            return;
+        }
+
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        if (size <= maxSize) {
+            return;
+        }
+
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            if (size <= maxSize) {
+                break;
+            }
+
+            final long length = file.length();
+            if (file.delete()) {
+                LOGGER.info("trimToSize delete " + file);
+                size -= length;
+            }
+        }
+    }
+
+    @NotNull
+    public static String sha1(@NotNull String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -62,6 +62,20 @@ public class FileUtil {
         return fileName.substring(fileName.lastIndexOf("."), fileName.length());
     }
 
+    /**
+     * Changes when the file is replaced or modified, used as part of cache keys
+     */
+    @NotNull
+    public static String getFileIdentity(@NotNull File file) {
+        String path;
+        try {
+            path = file.getCanonicalPath();
+        } catch (IOException e) {
+            path = file.getAbsolutePath();
+        }
+        return path + "|" + file.length() + "|" + file.lastModified();
+    }
+
     public static void openFileDirectory(@NotNull File file) {
         try {
             Runtime.getRuntime().exec("explorer /select,\"" + file.getAbsolutePath() + "\"");
@@ -0,0 +1,348 @@
+package com.getting.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Minimal pull parser of JSON, reads tokens from the stream as they are asked for without building a tree:
+ * <pre>
+ * reader.beginObject();
+ * while (reader.hasNext()) {
+ *     if ("streams".equals(reader.nextName())) { ... } else { reader.skipValue(); }
+ * }
+ * reader.endObject();
+ * </pre>
+ * Numbers can be read as strings and strings as numbers, like "30000/1001" of ffprobe. Not thread safe.
+ */
+public class JsonReader implements Closeable {
+
+    public enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    @NotNull
+    private final Reader reader;
+
+    private final char[] buffer = new char[8 * 1024];
+
+    private int position;
+
+    private int limit;
+
+    /**
+     * Next value of an object is a name
+     */
+    private boolean expectName;
+
+    /**
+     * Nesting of objects (true) and arrays (false)
+     */
+    private boolean[] scopes = new boolean[32];
+
+    private int depth;
+
+    private final StringBuilder text = new StringBuilder();
+
+    public JsonReader(@NotNull Reader reader) {
+        this.reader = reader;
+    }
+
+    public void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+        read();
+        push(true);
+    }
+
+    public void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+        read();
+        pop();
+    }
+
+    public void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+        read();
+        push(false);
+    }
+
+    public void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+        read();
+        pop();
+    }
+
+    /**
+     * @return true if the current object or array has more members
+     */
+    public boolean hasNext() throws IOException {
+        final Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    @NotNull
+    public Token peek() throws IOException {
+        final int c = peekChar();
+        switch (c) {
+            case -1:
+                return Token.END_DOCUMENT;
+            case '{':
+                return Token.BEGIN_OBJECT;
+            case '}':
+                return Token.END_OBJECT;
+            case '[':
+                return Token.BEGIN_ARRAY;
+            case ']':
+                return Token.END_ARRAY;
+            case '"':
+                return expectName ? Token.NAME : Token.STRING;
+            case 't':
+            case 'f':
+                return Token.BOOLEAN;
+            case 'n':
+                return Token.NULL;
+            default:
+                return Token.NUMBER;
+        }
+    }
+
+    @NotNull
+    public String nextName() throws IOException {
+        expect(Token.NAME);
+        final String name = readString();
+        if (peekChar() != ':') {
+            throw syntaxError("':' expected");
+        }
+        read();
+        expectName = false;
+        return name;
+    }
+
+    /**
+     * @return string, or the text of a number or boolean
+     */
+    @NotNull
+    public String nextString() throws IOException {
+        final Token token = peek();
+        final String value;
+        if (token == Token.STRING) {
+            value = readString();
+        } else if (token == Token.NUMBER || token == Token.BOOLEAN) {
+            value = readLiteral();
+        } else {
+            throw syntaxError("string expected but " + token);
+        }
+        endValue();
+        return value;
+    }
+
+    /**
+     * @return NaN for null or a string which is not a number
+     */
+    public double nextDouble() throws IOException {
+        if (peek() == Token.NULL) {
+            readLiteral();
+            endValue();
+            return Double.NaN;
+        }
+
+        final String value = nextString();
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    public void skipValue() throws IOException {
+        final Token token = peek();
+        switch (token) {
+            case BEGIN_OBJECT:
+                beginObject();
+                while (hasNext()) {
+                    nextName();
+                    skipValue();
+                }
+                endObject();
+                break;
+            case BEGIN_ARRAY:
+                beginArray();
+                while (hasNext()) {
+                    skipValue();
+                }
+                endArray();
+                break;
+            case STRING:
+                readString();
+                endValue();
+                break;
+            case NUMBER:
+            case BOOLEAN:
+            case NULL:
+                readLiteral();
+                endValue();
+                break;
+            default:
+                throw syntaxError("value expected but " + token);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private void push(boolean object) {
+        if (depth == scopes.length) {
+            boolean[] newScopes = new boolean[depth * 2];
+            System.arraycopy(scopes, 0, newScopes, 0, depth);
+            scopes = newScopes;
+        }
+        scopes[depth++] = object;
+        expectName = object;
+    }
+
+    private void pop() throws IOException {
+        depth--;
+        endValue();
+    }
+
+    /**
+     * After a value, skip the separator and expect a name if back in an object
+     */
+    private void endValue() throws IOException {
+        if (peekChar() == ',') {
+            read();
+        }
+        expectName = depth > 0 && scopes[depth - 1];
+    }
+
+    private void expect(@NotNull Token expected) throws IOException {
+        final Token token = peek();
+        if (token != expected) {
+            throw syntaxError(expected + " expected but " + token);
+        }
+    }
+
+    @NotNull
+    private String readString() throws IOException {
+        read();
+        text.setLength(0);
+        while (true) {
+            final int c = read();
+            if (c == -1) {
+                throw syntaxError("unterminated string");
+            }
+            if (c == '"') {
+                return text.toString();
+            }
+            if (c != '\\') {
+                text.append((char) c);
+                continue;
+            }
+
+            final int escaped = read();
+            switch (escaped) {
+                case 'n':
+                    text.append('\n');
+                    break;
+                case 't':
+                    text.append('\t');
+                    break;
+                case 'r':
+                    text.append('\r');
+                    break;
+                case 'b':
+                    text.append('\b');
+                    break;
+                case 'f':
+                    text.append('\f');
+                    break;
+                case 'u':
+                    int code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        final int digit = Character.digit(read(), 16);
+                        if (digit < 0) {
+                            throw syntaxError("bad unicode escape");
+                        }
+                        code = code * 16 + digit;
+                    }
+                    text.append((char) code);
+                    break;
+                case -1:
+                    throw syntaxError("unterminated string");
+                default:
+                    text.append((char) escaped);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Number, true, false or null
+     */
+    @NotNull
+    private String readLiteral() throws IOException {
+        text.setLength(0);
+        while (true) {
+            if (position == limit && !fill()) {
+                break;
+            }
+
+            final char c = buffer[position];
+            if (c == ',' || c == '}' || c == ']' || c == ':' || Character.isWhitespace(c)) {
+                break;
+            }
+            text.append(c);
+            position++;
+        }
+
+        if (text.length() == 0) {
+            throw syntaxError("value expected");
+        }
+        return text.toString();
+    }
+
+    /**
+     * @return next char which is not white space, without consuming it, -1 at the end
+     */
+    private int peekChar() throws IOException {
+        while (true) {
+            if (position == limit && !fill()) {
+                return -1;
+            }
+
+            final char c = buffer[position];
+            if (!Character.isWhitespace(c)) {
+                return c;
+            }
+            position++;
+        }
+    }
+
+    private int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++];
+    }
+
+    private boolean fill() throws IOException {
+        final int count = reader.read(buffer, 0, buffer.length);
+        if (count <= 0) {
+            return false;
+        }
+
+        position = 0;
+        limit = count;
+        return true;
+    }
+
+    @NotNull
+    private IOException syntaxError(@NotNull String message) {
+        return new IOException("json " + message);
+    }
+
+}
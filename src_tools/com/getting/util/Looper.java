@@ -1,126 +1,358 @@
 package com.getting.util;
 
+import com.getting.util.metrics.Histogram;
+import com.getting.util.metrics.MetricRegistry;
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Run tasks at their time on one or more worker threads.
+ * Tasks wait in a {@link DelayQueue}, post is O(log n). Removing by id only marks the tasks of that id through an
+ * index, they are dropped when they reach the head of the queue.
+ */
 public class Looper {
 
-    private boolean continueRun = true;
-
     private static final Logger LOGGER = LoggerFactory.getLogger(Looper.class);
 
+    /**
+     * Index key of tasks without id
+     */
+    private static final Object NULL_ID = new Object();
+
+    private static final Histogram QUEUE_WAIT_TIME = MetricRegistry.getDefault().histogram("looper_queue_wait_seconds", "Time tasks wait for a worker after they are due", Histogram.SECONDS_BUCKETS);
+
+    private final String name;
+
     private final Object lock = new Object();
 
-    private final List<Task> tasks = new ArrayList<>();
+    private final DelayQueue<ScheduledTask> tasks = new DelayQueue<>();
+
+    /**
+     * Pending tasks by id, ids are compared by identity
+     */
+    private final Map<Object, List<ScheduledTask>> pendingTasks = new IdentityHashMap<>();
+
+    private final List<Task> runningTasks = new ArrayList<>();
 
-    @Nullable
-    private Task currentTask;
+    /**
+     * Running tasks already canceled but not exited yet, they give no result any more
+     */
+    private final Set<Task> canceledRunningTasks = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Canceled tasks still in the queue, see {@link #purgeCanceledTasks()}
+     */
+    private int canceledCount;
+
+    private final int workerCount;
+
+    private volatile boolean continueRun = true;
 
     public Looper(String name) {
-        Thread thread = new Thread(() -> {
-            LOGGER.info(this + " start run");
-            while (continueRun) {
-                synchronized (lock) {
-                    if (tasks.isEmpty()) {
-                        try {
-                            LOGGER.info(this + " is empty, wait");
-                            lock.wait();
-                        } catch (InterruptedException e) {
-                            LOGGER.error("run", e);
-                        }
-                        continue;
-                    }
+        this(name, 1);
+    }
 
-                    final long waitTime = tasks.get(0).getTimeRunAt() - System.currentTimeMillis();
-                    if (waitTime > 0) {
-                        try {
-                            LOGGER.info(this + " is need to wait " + waitTime + "ms");
-                            lock.wait(waitTime);
-                        } catch (InterruptedException e) {
-                            LOGGER.error("run", e);
-                        }
-                        continue;
-                    }
+    public Looper(String name, int workerCount) {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("workerCount " + workerCount);
+        }
 
-                    currentTask = tasks.remove(0);
-                }
+        this.name = name;
+        this.workerCount = workerCount;
+        for (int i = 0; i < workerCount; i++) {
+            Thread thread = new Thread(this::loop);
+            thread.setName(workerCount == 1 ? "Thread-" + name : "Thread-" + name + "-" + (i + 1));
+            thread.start();
+        }
+    }
 
-                LOGGER.info(this + " run " + currentTask);
-                try {
-                    currentTask.run();
-                } catch (Throwable e) {
-                    LOGGER.error("run", e);
-                }
+    private void loop() {
+        LOGGER.info(this + " start run");
+        while (continueRun) {
+            final ScheduledTask scheduledTask;
+            try {
+                scheduledTask = tasks.take();
+            } catch (InterruptedException e) {
+                LOGGER.error("run", e);
+                continue;
+            }
+
+            if (scheduledTask.task == null) {
+                // quit
+                break;
+            }
 
-                synchronized (lock) {
-                    currentTask = null;
+            synchronized (lock) {
+                if (scheduledTask.canceled) {
+                    if (canceledCount > 0) {
+                        canceledCount--;
+                    }
+                    continue;
                 }
+
+                removeFromIndex(scheduledTask);
+                runningTasks.add(scheduledTask.task);
             }
+            QUEUE_WAIT_TIME.observe(Math.max(0, System.currentTimeMillis() - scheduledTask.timeRunAt) / 1000.0);
 
-            LOGGER.info(this + " exit");
-        });
-        thread.setName("Thread-" + name);
-        thread.start();
+            LOGGER.info(this + " run " + scheduledTask.task);
+            try {
+                scheduledTask.task.run();
+            } catch (Throwable e) {
+                LOGGER.error("run", e);
+            }
+
+            synchronized (lock) {
+                runningTasks.remove(scheduledTask.task);
+                canceledRunningTasks.remove(scheduledTask.task);
+            }
+        }
+
+        LOGGER.info(this + " exit");
     }
 
     public void quit() {
         LOGGER.info(this + " quit");
-        synchronized (lock) {
-            continueRun = false;
-            lock.notifyAll();
+        continueRun = false;
+        for (int i = 0; i < workerCount; i++) {
+            tasks.add(new ScheduledTask(null, 0, sequence.getAndIncrement()));
         }
     }
 
-    public void postTask(Task task) {
+    public void postTask(@NotNull Task task) {
         LOGGER.info(this + " postTask " + task);
+        ScheduledTask scheduledTask = new ScheduledTask(task, task.getTimeRunAt(), sequence.getAndIncrement());
         synchronized (lock) {
-            tasks.add(task);
-            Collections.sort(tasks);
-            lock.notifyAll();
+            pendingTasks.computeIfAbsent(indexKey(task.getId()), key -> new ArrayList<>(1)).add(scheduledTask);
+        }
+        tasks.add(scheduledTask);
+    }
+
+    /**
+     * Latest wins: replace the pending and running tasks of the same id with this one, but skip work already being done.
+     * If a task of the id with equal {@link Task#getParameters()} is pending, or running and not canceled, it is kept to give the same
+     * result and this one is dropped; other tasks of the id are removed either way.
+     *
+     * @return false if the task is dropped as redundant
+     */
+    public boolean postLatestTask(@NotNull Task task) {
+        final Object parameters = task.getParameters();
+        List<Task> cancelTasks = new ArrayList<>();
+        boolean redundant = false;
+        synchronized (lock) {
+            // a running task is closest to its result, check it first
+            for (Task runningTask : runningTasks) {
+                if (runningTask.getId() != task.getId() || canceledRunningTasks.contains(runningTask)) {
+                    continue;
+                }
+
+                if (!redundant && parameters != null && parameters.equals(runningTask.getParameters())) {
+                    redundant = true;
+                } else {
+                    cancelTasks.add(runningTask);
+                }
+            }
+
+            List<ScheduledTask> pending = pendingTasks.remove(indexKey(task.getId()));
+            if (pending != null) {
+                for (ScheduledTask scheduledTask : pending) {
+                    if (!redundant && parameters != null && parameters.equals(scheduledTask.task.getParameters())) {
+                        redundant = true;
+                        pendingTasks.computeIfAbsent(indexKey(task.getId()), key -> new ArrayList<>(1)).add(scheduledTask);
+                    } else {
+                        scheduledTask.canceled = true;
+                        canceledCount++;
+                    }
+                }
+                purgeCanceledTasks();
+            }
+
+            if (!redundant) {
+                postTask(task);
+            }
+            canceledRunningTasks.addAll(cancelTasks);
+        }
+
+        for (Task cancelTask : cancelTasks) {
+            cancelTask.cancel();
         }
+
+        LOGGER.info(this + " postLatestTask " + task + (redundant ? " skipped" : ""));
+        return !redundant;
     }
 
     public void removeTask(Object id) {
         LOGGER.info(this + " removeTask " + id);
+        List<Task> cancelTasks = new ArrayList<>();
         synchronized (lock) {
-            tasks.removeIf(task -> task.getId() == id);
-            lock.notifyAll();
+            List<ScheduledTask> removed = pendingTasks.remove(indexKey(id));
+            if (removed != null) {
+                for (ScheduledTask scheduledTask : removed) {
+                    scheduledTask.canceled = true;
+                }
+                canceledCount += removed.size();
+                purgeCanceledTasks();
+            }
+
+            for (Task task : runningTasks) {
+                if (task.getId() == id) {
+                    cancelTasks.add(task);
+                }
+            }
+            canceledRunningTasks.addAll(cancelTasks);
         }
 
-        if (currentTask != null && currentTask.getId() == id) {
-            currentTask.cancel();
+        for (Task task : cancelTasks) {
+            task.cancel();
         }
     }
 
     public void removeAllTasks() {
         LOGGER.info(this + " removeAllTasks");
+        List<Task> cancelTasks;
         synchronized (lock) {
-            tasks.clear();
-            lock.notifyAll();
+            clearPendingTasks();
+            cancelTasks = new ArrayList<>(runningTasks);
+            canceledRunningTasks.addAll(cancelTasks);
         }
 
-        if (currentTask != null) {
-            currentTask.cancel();
+        for (Task task : cancelTasks) {
+            task.cancel();
         }
     }
 
     public void removePendingTasks() {
         LOGGER.info(this + " removePendingTasks");
         synchronized (lock) {
-            tasks.clear();
-            lock.notifyAll();
+            clearPendingTasks();
         }
     }
 
     public boolean isAllDone() {
         synchronized (lock) {
-            return tasks.isEmpty() && currentTask == null;
+            return pendingTasks.isEmpty() && runningTasks.isEmpty();
         }
     }
 
+    /**
+     * @return tasks waiting in the queue, including canceled ones not dropped yet
+     */
+    public int getQueuedTaskCount() {
+        synchronized (lock) {
+            return tasks.size();
+        }
+    }
+
+    /**
+     * @return tasks running now, for example to check what a worker is busy with
+     */
+    @NotNull
+    public List<Task> getRunningTasks() {
+        synchronized (lock) {
+            return new ArrayList<>(runningTasks);
+        }
+    }
+
+    private void clearPendingTasks() {
+        for (List<ScheduledTask> scheduledTasks : pendingTasks.values()) {
+            for (ScheduledTask scheduledTask : scheduledTasks) {
+                scheduledTask.canceled = true;
+            }
+        }
+        pendingTasks.clear();
+        tasks.removeIf(scheduledTask -> scheduledTask.task != null);
+        canceledCount = 0;
+    }
+
+    /**
+     * Canceled tasks are dropped when due, but tasks delayed long may pile up if posted and removed often,
+     * remove them at once when they are more than the others
+     */
+    private void purgeCanceledTasks() {
+        if (canceledCount < 64 || canceledCount < tasks.size() / 2) {
+            return;
+        }
+
+        tasks.removeIf(scheduledTask -> scheduledTask.canceled);
+        canceledCount = 0;
+    }
+
+    private void removeFromIndex(@NotNull ScheduledTask scheduledTask) {
+        final Object key = indexKey(scheduledTask.task.getId());
+        List<ScheduledTask> scheduledTasks = pendingTasks.get(key);
+        if (scheduledTasks == null) {
+            return;
+        }
+
+        scheduledTasks.remove(scheduledTask);
+        if (scheduledTasks.isEmpty()) {
+            pendingTasks.remove(key);
+        }
+    }
+
+    @NotNull
+    private static Object indexKey(@Nullable Object id) {
+        return id == null ? NULL_ID : id;
+    }
+
+    @NotNull
+    @Override
+    public String toString() {
+        return "Looper{" + name + "}";
+    }
+
+    private static final class ScheduledTask implements Delayed {
+
+        /**
+         * Null to stop a worker
+         */
+        @Nullable
+        private final Task task;
+
+        private final long timeRunAt;
+
+        /**
+         * Keep post order of tasks at the same time
+         */
+        private final long sequence;
+
+        private volatile boolean canceled;
+
+        private ScheduledTask(@Nullable Task task, long timeRunAt, long sequence) {
+            this.task = task;
+            this.timeRunAt = timeRunAt;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public long getDelay(@NotNull TimeUnit unit) {
+            return unit.convert(timeRunAt - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(@NotNull Delayed o) {
+            ScheduledTask other = (ScheduledTask) o;
+            if (timeRunAt != other.timeRunAt) {
+                return timeRunAt < other.timeRunAt ? -1 : 1;
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+
+    }
+
 }
@@ -26,6 +26,15 @@ public abstract class Task implements Comparable<Task>, Runnable {
         return id;
     }
 
+    /**
+     * @return value deciding the result of this task, tasks with equal non null parameters do the same work,
+     * see {@link Looper#postLatestTask(Task)}
+     */
+    @Nullable
+    public Object getParameters() {
+        return null;
+    }
+
     @Override
     public int compareTo(@NotNull Task o) {
         return timeRunAt.compareTo(o.timeRunAt);
@@ -0,0 +1,442 @@
+package com.getting.util.executor;
+
+import com.getting.util.FileCache;
+import com.getting.util.FileUtil;
+import com.getting.util.metrics.Histogram;
+import com.getting.util.metrics.MetricRegistry;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Find the executable of a tool for this platform, in order:
+ * <ol>
+ * <li>the path in system property "gifconvert.&lt;name&gt;.path", like -Dgifconvert.ffmpeg.path=/usr/bin/ffmpeg</li>
+ * <li>the resource bundled for this platform, extracted once to tmpdir/gifconvert/bin/&lt;resource name&gt;/</li>
+ * <li>&lt;name&gt; on PATH</li>
+ * </ol>
+ * An extracted executable is copied to a part file and renamed atomically, with its SHA-256 next to it. It is only
+ * reused if it still matches, a file broken by a crashed copy is extracted again. If "&lt;resource&gt;.sha256" is
+ * bundled too, the extracted file must match it.
+ * <p>
+ * The work is done once on a background thread, see {@link #provideAsync()}, so the first conversion seldom waits.
+ */
+public class BinaryProvisioner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BinaryProvisioner.class);
+
+    public static final String WINDOWS_X86_64 = "windows-x86_64";
+
+    private static final FileCache BINARY_CACHE = new FileCache("bin");
+
+    private static final String CHECKSUM_EXTENSION = ".sha256";
+
+    /**
+     * Copy buffer of a resource in a jar, a 40MB ffmpeg takes 40 reads
+     */
+    private static final int COPY_BUFFER_SIZE = 1024 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> HASH_BUFFERS = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(COPY_BUFFER_SIZE));
+
+    private static final Histogram EXTRACT_TIME = MetricRegistry.getDefault().histogram("executor_extract_seconds", "Time to extract and verify a bundled executable", Histogram.SECONDS_BUCKETS);
+
+    @NotNull
+    private final String name;
+
+    @NotNull
+    private final Class<?> loaderClass;
+
+    /**
+     * Resource name next to loaderClass by platform, see {@link #getPlatform()}
+     */
+    @NotNull
+    private final Map<String, String> resources;
+
+    @Nullable
+    private CompletableFuture<Binary> binary;
+
+    /**
+     * @param name      tool name, like "ffmpeg"
+     * @param resources resource names next to loaderClass by platform like {@link #WINDOWS_X86_64}
+     */
+    public BinaryProvisioner(@NotNull String name, @NotNull Class<?> loaderClass, @NotNull Map<String, String> resources) {
+        this.name = name;
+        this.loaderClass = loaderClass;
+        this.resources = new HashMap<>(resources);
+    }
+
+    /**
+     * @return like "windows-x86_64", "linux-aarch64" or "mac-x86_64"
+     */
+    @NotNull
+    public static String getPlatform() {
+        final String os = System.getProperty("os.name", "").toLowerCase(Locale.ENGLISH);
+        final String arch = System.getProperty("os.arch", "").toLowerCase(Locale.ENGLISH);
+        final String platformOs = os.startsWith("windows") ? "windows" : os.startsWith("mac") ? "mac" : os.startsWith("linux") ? "linux" : os;
+        final String platformArch;
+        switch (arch) {
+            case "amd64":
+            case "x86_64":
+                platformArch = "x86_64";
+                break;
+            case "x86":
+            case "i386":
+            case "i686":
+                platformArch = "x86";
+                break;
+            case "arm64":
+            case "aarch64":
+                platformArch = "aarch64";
+                break;
+            default:
+                platformArch = arch;
+                break;
+        }
+        return platformOs + "-" + platformArch;
+    }
+
+    /**
+     * Start finding the executable in background if not yet, can be called many times
+     */
+    @NotNull
+    public synchronized CompletableFuture<Binary> provideAsync() {
+        if (binary == null) {
+            binary = CompletableFuture.supplyAsync(this::provide, runnable -> {
+                Thread thread = new Thread(runnable);
+                thread.setName("Thread-provision-" + name);
+                thread.setDaemon(true);
+                thread.start();
+            });
+        }
+        return binary;
+    }
+
+    /**
+     * Wait for {@link #provideAsync()}
+     *
+     * @return null if there is no executable for this platform
+     */
+    @Nullable
+    public Binary getBinary() {
+        return provideAsync().join();
+    }
+
+    @Nullable
+    private Binary provide() {
+        final String overridePath = System.getProperty("gifconvert." + name + ".path");
+        if (overridePath != null) {
+            final File file = new File(overridePath);
+            if (file.isFile()) {
+                LOGGER.info(name + " is set to " + file);
+                return new Binary(file, FileUtil.getFileIdentity(file));
+            }
+            LOGGER.error(name + " is set to " + file + " which does not exist");
+        }
+
+        final String platform = getPlatform();
+        final String resourceName = resources.get(platform);
+        if (resourceName != null && loaderClass.getResource(resourceName) != null) {
+            final File file = extract(resourceName);
+            if (file != null) {
+                // the resource name carries the build version
+                return new Binary(file, resourceName);
+            }
+        }
+
+        final File file = findOnPath();
+        if (file != null) {
+            LOGGER.info(name + " found on PATH " + file);
+            return new Binary(file, FileUtil.getFileIdentity(file));
+        }
+
+        LOGGER.error(name + " is not available on " + platform);
+        return null;
+    }
+
+    /**
+     * @return null if the resource can not be extracted or does not match its bundled checksum
+     */
+    @Nullable
+    private File extract(@NotNull String resourceName) {
+        final File directory = new File(BINARY_CACHE.getDirectory(), FileUtil.getFileNameWithoutExtension(new File(resourceName)));
+        final File file = new File(directory, resourceName);
+        final File checksumFile = new File(directory, resourceName + CHECKSUM_EXTENSION);
+        final String expectedChecksum = readBundledChecksum(resourceName);
+
+        try {
+            if (file.isFile() && checksumFile.isFile()) {
+                final String checksum = readChecksum(checksumFile);
+                if ((expectedChecksum == null || expectedChecksum.equals(checksum)) && checksum.equals(sha256(file))) {
+                    LOGGER.info(file + " verified");
+                    ensureExecutable(file);
+                    return file;
+                }
+                LOGGER.warn(file + " does not match its checksum, extract again");
+            }
+
+            final long startTime = System.nanoTime();
+            FileUtil.ensureDirectoryAvailable(directory);
+            final File partFile = BINARY_CACHE.getPartFile(file);
+            final String checksum;
+            try {
+                checksum = copyResource(resourceName, partFile);
+                if (expectedChecksum != null && !expectedChecksum.equals(checksum)) {
+                    LOGGER.error(resourceName + " sha256 " + checksum + " does not match the bundled " + expectedChecksum);
+                    partFile.delete();
+                    return null;
+                }
+                ensureExecutable(partFile);
+                writeChecksum(checksumFile, checksum, resourceName);
+            } catch (IOException e) {
+                partFile.delete();
+                throw e;
+            }
+
+            // the executable appears last, with its checksum already beside it
+            if (!BINARY_CACHE.commit(partFile, file)) {
+                // replaced by another instance meanwhile, or in use on Windows, the one there may still be good
+                return file.isFile() && checksum.equals(sha256(file)) ? file : null;
+            }
+            EXTRACT_TIME.observeNanos(System.nanoTime() - startTime);
+            LOGGER.info(resourceName + " has extracted to " + file + ", sha256 " + checksum);
+            return file;
+        } catch (IOException e) {
+            LOGGER.error("extract", e);
+            return null;
+        }
+    }
+
+    /**
+     * Copy a file resource with the file system, a resource in a jar through a large buffer
+     *
+     * @return SHA-256 of the copy
+     */
+    @NotNull
+    private String copyResource(@NotNull String resourceName, @NotNull File target) throws IOException {
+        final URL resource = loaderClass.getResource(resourceName);
+        if (resource == null) {
+            throw new FileNotFoundException(resourceName);
+        }
+
+        if ("file".equals(resource.getProtocol())) {
+            try {
+                final File source = Paths.get(resource.toURI()).toFile();
+                try (FileChannel input = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+                     FileChannel output = FileChannel.open(target.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    long position = 0;
+                    final long size = input.size();
+                    while (position < size) {
+                        position += input.transferTo(position, size - position, output);
+                    }
+                    output.force(true);
+                }
+                return sha256(target);
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                LOGGER.info("copyResource " + resource + " as stream", e);
+            }
+        }
+
+        final MessageDigest digest = newDigest();
+        try (InputStream input = loaderClass.getResourceAsStream(resourceName);
+             FileChannel output = FileChannel.open(target.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (input == null) {
+                throw new FileNotFoundException(resourceName);
+            }
+
+            final byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            while (true) {
+                final int readCount = input.read(buffer);
+                if (readCount == -1) {
+                    break;
+                }
+
+                digest.update(buffer, 0, readCount);
+                final ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, readCount);
+                while (byteBuffer.hasRemaining()) {
+                    output.write(byteBuffer);
+                }
+            }
+            output.force(true);
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Read the file through a reused direct buffer. Not memory mapped: a mapping is only released by GC, and on
+     * Windows a mapped file can not be replaced, so a corrupt binary could never be extracted again.
+     */
+    @NotNull
+    private static String sha256(@NotNull File file) throws IOException {
+        final MessageDigest digest = newDigest();
+        final ByteBuffer buffer = HASH_BUFFERS.get();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer.clear();
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * @return checksum in the bundled "&lt;resource&gt;.sha256", null if not bundled
+     */
+    @Nullable
+    private String readBundledChecksum(@NotNull String resourceName) {
+        try (InputStream input = loaderClass.getResourceAsStream(resourceName + CHECKSUM_EXTENSION)) {
+            if (input == null) {
+                return null;
+            }
+
+            return parseChecksum(new String(readAll(input), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            LOGGER.error("readBundledChecksum", e);
+            return null;
+        }
+    }
+
+    @NotNull
+    private static String readChecksum(@NotNull File checksumFile) throws IOException {
+        return parseChecksum(new String(Files.readAllBytes(checksumFile.toPath()), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Same format as sha256sum: "&lt;hex&gt;  &lt;file name&gt;"
+     */
+    private static void writeChecksum(@NotNull File checksumFile, @NotNull String checksum, @NotNull String fileName) throws IOException {
+        final File partFile = BINARY_CACHE.getPartFile(checksumFile);
+        Files.write(partFile.toPath(), (checksum + "  " + fileName + "\n").getBytes(StandardCharsets.UTF_8));
+        Files.move(partFile.toPath(), checksumFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @NotNull
+    private static String parseChecksum(@NotNull String text) {
+        final String trimmed = text.trim();
+        final int end = trimmed.indexOf(' ');
+        return (end < 0 ? trimmed : trimmed.substring(0, end)).toLowerCase(Locale.ENGLISH);
+    }
+
+    @NotNull
+    private static byte[] readAll(@NotNull InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4 * 1024];
+        while (true) {
+            final int readCount = input.read(buffer);
+            if (readCount == -1) {
+                return output.toByteArray();
+            }
+            output.write(buffer, 0, readCount);
+        }
+    }
+
+    private static void ensureExecutable(@NotNull File file) throws IOException {
+        if (!file.canExecute() && !file.setExecutable(true)) {
+            throw new IOException("can not make " + file + " executable");
+        }
+    }
+
+    @Nullable
+    private File findOnPath() {
+        final String path = System.getenv("PATH");
+        if (path == null) {
+            return null;
+        }
+
+        final boolean windows = getPlatform().startsWith("windows");
+        final String fileName = windows ? name + ".exe" : name;
+        for (String directory : path.split(File.pathSeparator)) {
+            if (directory.isEmpty()) {
+                continue;
+            }
+
+            final File file = new File(directory, fileName);
+            if (file.isFile() && file.canExecute()) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    @NotNull
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @NotNull
+    private static String toHex(@NotNull byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    @NotNull
+    @Override
+    public String toString() {
+        return "BinaryProvisioner{" + name + "}";
+    }
+
+    /**
+     * An executable ready to run
+     */
+    public static final class Binary {
+
+        @NotNull
+        private final File file;
+
+        @NotNull
+        private final String version;
+
+        private Binary(@NotNull File file, @NotNull String version) {
+            this.file = file;
+            this.version = version;
+        }
+
+        @NotNull
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * @return changes when the executable may behave differently, like the bundled resource name or the identity
+         * of a file on PATH
+         */
+        @NotNull
+        public String getVersion() {
+            return version;
+        }
+
+        @NotNull
+        @Override
+        public String toString() {
+            return file.toString();
+        }
+
+    }
+
+}
@@ -5,9 +5,13 @@ import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class ExecuteResult {
 
+    /**
+     * From {@link System#nanoTime()}, not affected by changes of the wall clock
+     */
     private final long startTime;
     private long endTime;
 
@@ -16,7 +20,8 @@ public class ExecuteResult {
     private List<String> messages = new ArrayList<>();
 
     public ExecuteResult() {
-        startTime = System.currentTimeMillis();
+        startTime = System.nanoTime();
+        endTime = startTime;
     }
 
     @NotNull
@@ -26,7 +31,7 @@ public class ExecuteResult {
 
     public void setStatus(@NotNull Status status) {
         this.status = status;
-        endTime = System.currentTimeMillis();
+        endTime = System.nanoTime();
     }
 
     @NotNull
@@ -36,10 +41,17 @@ public class ExecuteResult {
 
     public void setMessages(@NotNull List<String> messages) {
         this.messages = messages;
-        endTime = System.currentTimeMillis();
+        endTime = System.nanoTime();
     }
 
+    /**
+     * @return millisecond
+     */
     public long getCostTime() {
+        return TimeUnit.NANOSECONDS.toMillis(getCostNanoTime());
+    }
+
+    public long getCostNanoTime() {
         return endTime - startTime;
     }
 
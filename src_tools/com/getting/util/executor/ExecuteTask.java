@@ -9,7 +9,14 @@ import java.util.List;
 
 public abstract class ExecuteTask {
 
-    private boolean hasDone;
+    /**
+     * Lines kept of the output if messages are needed, see {@link MessageBuffer}
+     */
+    public static final int DEFAULT_MESSAGE_CAPACITY = 1024;
+
+    private volatile boolean hasDone;
+
+    private volatile boolean canceled;
 
     @NotNull
     public abstract List<String> buildParameters();
@@ -17,6 +24,22 @@ public abstract class ExecuteTask {
     @Nullable
     public abstract File getOutputDirectory();
 
+    /**
+     * @return max lines to keep of the output, the last ones are kept
+     */
+    public int getMessageCapacity() {
+        return DEFAULT_MESSAGE_CAPACITY;
+    }
+
+    /**
+     * Called for each output line, like the header of "ffmpeg -i" which is all a probe needs
+     *
+     * @return true to stop the process now as a success, all output needed has been read
+     */
+    public boolean isMessageEnough(@NotNull String message) {
+        return false;
+    }
+
     public boolean hasDone() {
         return hasDone;
     }
@@ -25,4 +48,12 @@ public abstract class ExecuteTask {
         hasDone = true;
     }
 
+    public boolean isCanceled() {
+        return canceled;
+    }
+
+    public void setCanceled() {
+        canceled = true;
+    }
+
 }
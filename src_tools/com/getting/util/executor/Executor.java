@@ -1,8 +1,9 @@
 package com.getting.util.executor;
 
 import com.getting.util.FileUtil;
-import javafx.beans.property.SimpleStringProperty;
-import javafx.beans.property.StringProperty;
+import com.getting.util.metrics.Counter;
+import com.getting.util.metrics.Histogram;
+import com.getting.util.metrics.MetricRegistry;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
@@ -11,149 +12,361 @@ import org.slf4j.LoggerFactory;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
 public class Executor {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Executor.class);
 
-    protected final StringProperty executorOutputMessage = new SimpleStringProperty();
-    private final Class loaderClass;
+    /**
+     * Read output of processes and wait for them, see {@link #createPumps()}
+     */
+    private static final ExecutorService PUMPS = createPumps();
+
+    /**
+     * Lines kept to log when a process fails without needing its messages
+     */
+    private static final int FAILURE_MESSAGE_LINES = 32;
+
+    private static final Histogram PROCESS_TIME = MetricRegistry.getDefault().histogram("executor_process_seconds", "Time from start to exit of each process", Histogram.SECONDS_BUCKETS);
+
+    private static final Counter PROCESSES = MetricRegistry.getDefault().counter("executor_processes_total", "Processes executed");
+
+    private static final Counter PROCESS_FAILURES = MetricRegistry.getDefault().counter("executor_process_failures_total", "Processes failed to start or exited with error");
+
+    private static final Counter PROCESS_CANCELLATIONS = MetricRegistry.getDefault().counter("executor_process_cancellations_total", "Processes canceled");
+
     @NotNull
-    private final String executorName;
+    private final BinaryProvisioner provisioner;
+    /**
+     * Running processes, one for each executing task
+     */
+    private final Map<ExecuteTask, Process> executors = new ConcurrentHashMap<>();
+
+    /**
+     * Virtual threads when running on Java 21 or later, a process blocked on its pipes then holds no platform thread.
+     * Looked up by reflection to keep running on Java 8.
+     */
     @NotNull
-    private final File executorFile;
+    private static ExecutorService createPumps() {
+        try {
+            ExecutorService pumps = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            LOGGER.info("pump process output on virtual threads");
+            return pumps;
+        } catch (ReflectiveOperationException e) {
+            LOGGER.info("pump process output on platform threads");
+        }
+
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setName("Thread-executor-pump");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Start finding the executable in background at once, it is usually ready before the first task
+     */
+    public Executor(@NotNull BinaryProvisioner provisioner) {
+        this.provisioner = provisioner;
+        provisioner.provideAsync();
+    }
+
+    /**
+     * @return false if there is no executable for this platform, for example an optional tool not bundled
+     */
+    public boolean isExecutorAvailable() {
+        return provisioner.getBinary() != null;
+    }
+
+    /**
+     * @return version of the executable, for example to tell apart outputs cached by another build
+     */
     @Nullable
-    private Process executor;
-    private boolean normalExecute;
+    protected String getExecutorVersion() {
+        final BinaryProvisioner.Binary binary = provisioner.getBinary();
+        return binary == null ? null : binary.getVersion();
+    }
 
-    public Executor(@NotNull Class loaderClass, @NotNull String executorName) {
-        this.loaderClass = loaderClass;
-        this.executorName = executorName;
-        executorFile = new File(System.getProperty("java.io.tmpdir"), executorName);
+    @Nullable
+    protected ExecuteResult execute(@NotNull ExecuteTask executeTask, boolean needMessages) {
+        return execute(executeTask, needMessages, null);
     }
 
-    private void copyExecutorToTempDirectory() {
-        try (OutputStream outputStream = new FileOutputStream(executorFile);
-             InputStream inputStream = loaderClass.getResourceAsStream(executorName)) {
-            byte[] buffer = new byte[4 * 1024];
-            while (true) {
-                int readCount = inputStream.read(buffer);
-                if (readCount == -1) {
-                    break;
-                }
+    /**
+     * Can be called from several threads at the same time, each task runs in its own process
+     *
+     * @param messageListener receive every output line of this task only
+     */
+    @Nullable
+    protected ExecuteResult execute(@NotNull ExecuteTask executeTask, boolean needMessages, @Nullable Consumer<String> messageListener) {
+        return execute(executeTask, needMessages, messageListener, null);
+    }
 
-                outputStream.write(buffer, 0, readCount);
-            }
+    /**
+     * @param messageListener receive every error output line of this task only
+     * @param outputListener  if not null, standard output is read apart from error output and sent to it line by line,
+     *                        for example the key=value lines of "ffmpeg -progress pipe:1"
+     */
+    @Nullable
+    protected ExecuteResult execute(@NotNull ExecuteTask executeTask, boolean needMessages, @Nullable Consumer<String> messageListener, @Nullable Consumer<String> outputListener) {
+        return executeAsync(executeTask, needMessages, messageListener, outputListener).join();
+    }
 
-            LOGGER.info(executorName + " has copied to " + executorFile);
-        } catch (IOException e) {
-            LOGGER.error("copyExecutorToTempDirectory", e);
-        }
+    /**
+     * Standard output of the process is copied to outputStream as it is produced, without any temp file
+     *
+     * @param messageListener receive every error output line of this task only
+     */
+    @Nullable
+    protected ExecuteResult execute(@NotNull ExecuteTask executeTask, @NotNull OutputStream outputStream, @Nullable Consumer<String> messageListener) {
+        return executeAsync(executeTask, outputStream, messageListener).join();
     }
 
-    private void ensureExecutorAvailable() {
-        if (executorFile.exists() && executorFile.isFile()) {
-            LOGGER.info(executorFile + " exists");
-            return;
-        }
+    /**
+     * Start the process and return at once, no thread of the caller waits for it
+     *
+     * @return completed with null if the process can not run, listeners are called on pump threads
+     */
+    @NotNull
+    protected CompletableFuture<ExecuteResult> executeAsync(@NotNull ExecuteTask executeTask, boolean needMessages, @Nullable Consumer<String> messageListener, @Nullable Consumer<String> outputListener) {
+        return executeProcess(executeTask, needMessages, messageListener, outputListener == null ? null : inputStream -> pumpLines(inputStream, outputListener));
+    }
 
-        copyExecutorToTempDirectory();
+    /**
+     * @see #execute(ExecuteTask, OutputStream, Consumer)
+     */
+    @NotNull
+    protected CompletableFuture<ExecuteResult> executeAsync(@NotNull ExecuteTask executeTask, @NotNull OutputStream outputStream, @Nullable Consumer<String> messageListener) {
+        return executeProcess(executeTask, false, messageListener, inputStream -> {
+            try {
+                byte[] buffer = new byte[64 * 1024];
+                while (true) {
+                    int readCount = inputStream.read(buffer);
+                    if (readCount == -1) {
+                        break;
+                    }
+
+                    outputStream.write(buffer, 0, readCount);
+                }
+                outputStream.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
     }
 
+    /**
+     * @param outputReader read standard output apart from error output, for example to parse it as a stream
+     * @param messageListener receive every error output line of this task only
+     */
     @Nullable
-    protected ExecuteResult execute(@NotNull ExecuteTask executeTask, boolean needMessages) {
-        ensureExecutorAvailable();
+    protected ExecuteResult execute(@NotNull ExecuteTask executeTask, @NotNull Consumer<InputStream> outputReader, @Nullable Consumer<String> messageListener) {
+        return executeProcess(executeTask, false, messageListener, outputReader).join();
+    }
+
+    /**
+     * Start the process and return at once, for a long running process whose output is read as it is needed
+     *
+     * @param outputReader read standard output on a pump thread, the process is destroyed if it throws
+     * @see #execute(ExecuteTask, Consumer, Consumer)
+     */
+    @NotNull
+    protected CompletableFuture<ExecuteResult> executeAsync(@NotNull ExecuteTask executeTask, @NotNull Consumer<InputStream> outputReader, @Nullable Consumer<String> messageListener) {
+        return executeProcess(executeTask, false, messageListener, outputReader);
+    }
+
+    /**
+     * @param outputReader if not null, read standard output apart from error output on another pump
+     */
+    @NotNull
+    private CompletableFuture<ExecuteResult> executeProcess(@NotNull ExecuteTask executeTask, boolean needMessages, @Nullable Consumer<String> messageListener, @Nullable Consumer<InputStream> outputReader) {
+        final BinaryProvisioner.Binary binary = provisioner.getBinary();
+        if (binary == null) {
+            LOGGER.error("execute " + executeTask + ", no executable of " + provisioner);
+            PROCESSES.increment();
+            PROCESS_FAILURES.increment();
+            executeTask.setHasDone();
+            return CompletableFuture.completedFuture(null);
+        }
+
         if (executeTask.getOutputDirectory() != null) {
             FileUtil.ensureDirectoryAvailable(executeTask.getOutputDirectory());
         }
 
-        // cannot execute two process together
-        assert executor != null;
-
         LOGGER.info("execute()");
 
+        final ExecuteResult result = new ExecuteResult();
+        final Process executor;
         try {
-            ExecuteResult result = new ExecuteResult();
             List<String> command = new ArrayList<>();
-            command.add(executorFile.getAbsolutePath());
+            command.add(binary.getFile().getAbsolutePath());
             command.addAll(executeTask.buildParameters());
             ProcessBuilder processBuilder = new ProcessBuilder(command);
-            processBuilder.redirectErrorStream(true);
+            processBuilder.redirectErrorStream(outputReader == null);
             executor = processBuilder.start();
-            normalExecute = true;
+        } catch (IOException e) {
+            LOGGER.error("execute", e);
+            PROCESSES.increment();
+            PROCESS_FAILURES.increment();
+            executeTask.setHasDone();
+            return CompletableFuture.completedFuture(null);
+        }
 
-            List<String> messages = new ArrayList<>();
-            BufferedReader reader = new BufferedReader(new InputStreamReader(executor.getInputStream()));
-            while (true) {
-                String message = reader.readLine();
-                if (message == null) {
-                    break;
+        executors.put(executeTask, executor);
+        if (executeTask.isCanceled()) {
+            executor.destroy();
+        }
+
+        CompletableFuture<Void> outputPump = CompletableFuture.completedFuture(null);
+        if (outputReader != null) {
+            outputPump = CompletableFuture.runAsync(() -> {
+                try {
+                    outputReader.accept(executor.getInputStream());
+                } catch (RuntimeException e) {
+                    // nobody reads the output any more, the process would block forever
+                    executor.destroy();
+                    throw e;
                 }
+            }, PUMPS);
+        }
+
+        final CompletableFuture<Void> finalOutputPump = outputPump;
+        final InputStream messageStream = outputReader == null ? executor.getInputStream() : executor.getErrorStream();
+        return CompletableFuture.supplyAsync(() -> waitProcess(executeTask, executor, result, messageStream, needMessages, messageListener, finalOutputPump), PUMPS);
+    }
+
+    /**
+     * Read messages until the process closes its output, then wait for its exit
+     */
+    @Nullable
+    private ExecuteResult waitProcess(@NotNull ExecuteTask executeTask, @NotNull Process executor, @NotNull ExecuteResult result, @NotNull InputStream messageStream, boolean needMessages, @Nullable Consumer<String> messageListener, @NotNull CompletableFuture<Void> outputPump) {
+        try {
+            final MessageBuffer messages = new MessageBuffer(needMessages ? executeTask.getMessageCapacity() : FAILURE_MESSAGE_LINES);
+            boolean outputSuccess = true;
+            boolean stoppedEarly = false;
+            try {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(messageStream));
+                while (true) {
+                    final String line = reader.readLine();
+                    if (line == null) {
+                        break;
+                    }
 
-                LOGGER.info(message);
+                    if (LOGGER.isDebugEnabled()) {
+                        LOGGER.debug(line);
+                    }
 
-                executorOutputMessage.set(message);
-                if (needMessages) {
-                    messages.add(message);
+                    if (messageListener != null) {
+                        messageListener.accept(line);
+                    }
+                    messages.add(line);
+
+                    if (executeTask.isMessageEnough(line)) {
+                        stoppedEarly = true;
+                        executor.destroy();
+                        break;
+                    }
                 }
+            } catch (IOException e) {
+                // the stream is closed when the process is destroyed, by cancel or by a failed output reader
+                LOGGER.error("execute", e);
+                outputSuccess = false;
+            }
+
+            try {
+                outputPump.join();
+            } catch (CompletionException e) {
+                LOGGER.error("execute", e);
+                outputSuccess = false;
             }
 
-            result.setStatus(normalExecute ? (executor.waitFor() == 0 ? ExecuteResult.Status.SUCCESS : ExecuteResult.Status.FAIL) : ExecuteResult.Status.CANCELED);
-            result.setMessages(messages);
+            final int exitValue = executor.waitFor();
+            if (executeTask.isCanceled()) {
+                result.setStatus(ExecuteResult.Status.CANCELED);
+            } else if ((exitValue == 0 || stoppedEarly) && outputSuccess) {
+                result.setStatus(ExecuteResult.Status.SUCCESS);
+            } else {
+                result.setStatus(ExecuteResult.Status.FAIL);
+                LOGGER.warn(executeTask + " exit with " + exitValue + ", last " + (messages.getLineCount() - messages.getFirstLineIndex()) + " of " + messages.getLineCount() + " lines:\n" + String.join("\n", messages.toList()));
+            }
+            result.setMessages(needMessages ? messages.toList() : new ArrayList<>());
+            recordProcess(result);
+            LOGGER.info(executeTask + " " + result.getStatus() + " in " + result.getCostTime() + "ms, " + messages.getLineCount() + " lines");
             return result;
-        } catch (@NotNull IOException | InterruptedException e) {
+        } catch (InterruptedException e) {
             LOGGER.error("execute", e);
         } finally {
-            executor = null;
+            executors.remove(executeTask);
             executeTask.setHasDone();
         }
 
         return null;
     }
 
-    public void cancel() {
-        LOGGER.info("cancel()");
-        if (executor == null) {
-            return;
+    private static void recordProcess(@NotNull ExecuteResult result) {
+        PROCESSES.increment();
+        PROCESS_TIME.observeNanos(result.getCostNanoTime());
+        if (result.getStatus() == ExecuteResult.Status.FAIL) {
+            PROCESS_FAILURES.increment();
+        } else if (result.getStatus() == ExecuteResult.Status.CANCELED) {
+            PROCESS_CANCELLATIONS.increment();
         }
+    }
+
+    private static void pumpLines(@NotNull InputStream inputStream, @NotNull Consumer<String> listener) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
+            while (true) {
+                String line = reader.readLine();
+                if (line == null) {
+                    break;
+                }
 
-        normalExecute = false;
-        executor.destroy();
+                listener.accept(line);
+            }
+        } catch (IOException e) {
+            LOGGER.error("pumpLines", e);
+        }
     }
 
     /**
-     * Another way to destroy the process
+     * Cancel all running tasks
      */
-    public void forceCancel() {
-        LOGGER.info("forceCancel()");
-        if (executor == null) {
-            return;
+    public void cancel() {
+        LOGGER.info("cancel()");
+        for (ExecuteTask executeTask : executors.keySet()) {
+            cancel(executeTask);
         }
+    }
 
-        normalExecute = false;
-        ArrayList<String> command = new ArrayList<>();
-        command.add("taskkill");
-        command.add("/F");
-        command.add("/IM");
-        command.add(executorName);
-        command.add("/T");
-        ProcessBuilder processBuilder = new ProcessBuilder(command);
-        processBuilder.redirectErrorStream(true);
+    public void cancel(@NotNull ExecuteTask executeTask) {
+        LOGGER.info("cancel() " + executeTask);
+        executeTask.setCanceled();
+        Process executor = executors.get(executeTask);
+        if (executor != null) {
+            executor.destroy();
+        }
+    }
 
-        try {
-            Process process = processBuilder.start();
-            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            while (true) {
-                String message = reader.readLine();
-                if (message == null) {
-                    break;
-                }
+    public int getRunningCount() {
+        return executors.size();
+    }
 
-                LOGGER.info(message);
-            }
-            process.waitFor();
-        } catch (@NotNull InterruptedException | IOException e) {
-            LOGGER.error("forceCancel", e);
+    /**
+     * Kill all running processes at once instead of asking them to quit
+     */
+    public void forceCancel() {
+        LOGGER.info("forceCancel()");
+        for (Map.Entry<ExecuteTask, Process> executor : executors.entrySet()) {
+            executor.getKey().setCanceled();
+            executor.getValue().destroyForcibly();
         }
     }
 
@@ -0,0 +1,102 @@
+package com.getting.util.executor;
+
+import com.getting.util.metrics.Histogram;
+import com.getting.util.metrics.MetricRegistry;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Run several executor processes together, each job on its own worker thread
+ */
+public class ExecutorPool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExecutorPool.class);
+
+    /**
+     * Memory one ffmpeg process may take while converting a 1080p clip
+     */
+    private static final long MEMORY_PER_WORKER = 512L * 1024 * 1024;
+
+    private static final Histogram QUEUE_WAIT_TIME = MetricRegistry.getDefault().histogram("executor_pool_queue_wait_seconds", "Time jobs wait for a free worker", Histogram.SECONDS_BUCKETS);
+
+    private final String name;
+
+    private final int workerCount;
+
+    @NotNull
+    private final ExecutorService workers;
+
+    public ExecutorPool(@NotNull String name) {
+        this(name, getDefaultWorkerCount());
+    }
+
+    public ExecutorPool(@NotNull String name, int workerCount) {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("workerCount " + workerCount);
+        }
+
+        this.name = name;
+        this.workerCount = workerCount;
+        final AtomicInteger index = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setName("Thread-" + name + "-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        LOGGER.info(this + " start with " + workerCount + " workers");
+    }
+
+    /**
+     * Limited by both available processors and physical memory
+     */
+    public static int getDefaultWorkerCount() {
+        final int processors = Runtime.getRuntime().availableProcessors();
+        final OperatingSystemMXBean system = ManagementFactory.getOperatingSystemMXBean();
+        if (!(system instanceof com.sun.management.OperatingSystemMXBean)) {
+            return processors;
+        }
+
+        final long memory = ((com.sun.management.OperatingSystemMXBean) system).getTotalPhysicalMemorySize();
+        return (int) Math.max(1, Math.min(processors, memory / MEMORY_PER_WORKER));
+    }
+
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    @NotNull
+    public <R> Future<R> submit(@NotNull Callable<R> job) {
+        final long submitTime = System.nanoTime();
+        return workers.submit(() -> {
+            QUEUE_WAIT_TIME.observeNanos(System.nanoTime() - submitTime);
+            return job.call();
+        });
+    }
+
+    public void shutdown() {
+        LOGGER.info(this + " shutdown");
+        workers.shutdown();
+    }
+
+    public boolean awaitTermination(long timeout, @NotNull TimeUnit unit) throws InterruptedException {
+        return workers.awaitTermination(timeout, unit);
+    }
+
+    @NotNull
+    @Override
+    public String toString() {
+        return "ExecutorPool{" + name + "}";
+    }
+
+}
@@ -0,0 +1,71 @@
+package com.getting.util.executor;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keep only the last lines of a process output, memory stays the same however verbose the process is.
+ * Lines are indexed from 0 in output order, older lines are overwritten. Not thread safe.
+ */
+public class MessageBuffer {
+
+    @NotNull
+    private final String[] lines;
+
+    /**
+     * Lines added since created, index of the next line
+     */
+    private long lineCount;
+
+    public MessageBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity " + capacity);
+        }
+
+        lines = new String[capacity];
+    }
+
+    public void add(@NotNull String line) {
+        lines[(int) (lineCount % lines.length)] = line;
+        lineCount++;
+    }
+
+    public long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @return index of the oldest line still kept
+     */
+    public long getFirstLineIndex() {
+        return Math.max(0, lineCount - lines.length);
+    }
+
+    /**
+     * @return null if the line is overwritten or not added yet
+     */
+    @Nullable
+    public String get(long lineIndex) {
+        if (lineIndex < getFirstLineIndex() || lineIndex >= lineCount) {
+            return null;
+        }
+
+        return lines[(int) (lineIndex % lines.length)];
+    }
+
+    /**
+     * @return kept lines from the oldest
+     */
+    @NotNull
+    public List<String> toList() {
+        List<String> list = new ArrayList<>((int) (lineCount - getFirstLineIndex()));
+        for (long i = getFirstLineIndex(); i < lineCount; i++) {
+            list.add(lines[(int) (i % lines.length)]);
+        }
+        return list;
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.getting.util.ffmpeg;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * One block of "ffmpeg -progress" output, unknown values are negative
+ */
+public final class FfmpegProgress {
+
+    private final long frame;
+
+    private final double fps;
+
+    private final long outTimeMicroseconds;
+
+    private final long totalSize;
+
+    private final double speed;
+
+    private final boolean end;
+
+    public FfmpegProgress(long frame, double fps, long outTimeMicroseconds, long totalSize, double speed, boolean end) {
+        this.frame = frame;
+        this.fps = fps;
+        this.outTimeMicroseconds = outTimeMicroseconds;
+        this.totalSize = totalSize;
+        this.speed = speed;
+        this.end = end;
+    }
+
+    public long getFrame() {
+        return frame;
+    }
+
+    public double getFps() {
+        return fps;
+    }
+
+    /**
+     * @return second
+     */
+    public double getOutTime() {
+        return outTimeMicroseconds < 0 ? -1 : outTimeMicroseconds / 1000000.0;
+    }
+
+    /**
+     * @return bytes written to output
+     */
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    /**
+     * @return encode speed relative to real time
+     */
+    public double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * @return true for the last block of a conversion
+     */
+    public boolean isEnd() {
+        return end;
+    }
+
+    @NotNull
+    @Override
+    public String toString() {
+        return "FfmpegProgress{frame=" + frame + ", fps=" + fps + ", outTime=" + getOutTime() + ", totalSize=" + totalSize + ", speed=" + speed + ", end=" + end + "}";
+    }
+
+}
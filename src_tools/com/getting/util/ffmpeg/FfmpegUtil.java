@@ -11,82 +11,10 @@ import java.util.regex.Pattern;
 
 public class FfmpegUtil {
 
-    private static final Pattern DURATION_PATTERN = Pattern.compile("Duration: (?<duration>(?<hour>\\d{2}):(?<minute>\\d{2}):(?<second>\\d{2})\\.(\\d+))", Pattern.CASE_INSENSITIVE);
-
-    private static final Pattern VIDEO_SIZE_PATTERN = Pattern.compile("(?<width>\\d{2,4})x(?<height>\\d{2,4})", Pattern.CASE_INSENSITIVE);
-
-    private static final Pattern VIDEO_FRAME_RATE_PATTERN = Pattern.compile("(?<frame>[0-9.]+) fps", Pattern.CASE_INSENSITIVE);
-
     private static final Pattern CONVERT_PROGRESS_PATTERN = Pattern.compile("time=(?<duration>(?<hour>\\d{2}):(?<minute>\\d{2}):(?<second>\\d{2})\\.(?<millsecond>\\d{2}))", Pattern.CASE_INSENSITIVE);
 
     private static final Pattern CONVERT_SPEED_PATTERN = Pattern.compile("(speed=)?(?<speed>[0-9/.]+)x", Pattern.CASE_INSENSITIVE);
 
-    /**
-     * @param messages Output of "ffmpeg -i file"
-     */
-    @Nullable
-    private static Point parseVideoSize(@NotNull List<String> messages) {
-        for (String message : messages) {
-            for (String token : message.split(",")) {
-                Matcher videoSizeMatcher = VIDEO_SIZE_PATTERN.matcher(token);
-                if (videoSizeMatcher.find()) {
-                    return new Point(Integer.parseInt(videoSizeMatcher.group("width")), Integer.parseInt(videoSizeMatcher.group("height")));
-                }
-            }
-        }
-
-        return null;
-    }
-
-    /**
-     * @param messages Output of "ffmpeg -i file"
-     */
-    private static double parseFrameRate(@NotNull List<String> messages) {
-        for (String message : messages) {
-            for (String token : message.split(",")) {
-                Matcher frameRateMatcher = VIDEO_FRAME_RATE_PATTERN.matcher(token);
-                if (frameRateMatcher.find()) {
-                    return Double.parseDouble(frameRateMatcher.group("frame"));
-                }
-            }
-        }
-
-        return -1;
-    }
-
-    /**
-     * @param messages Output of "ffmpeg -i file"
-     */
-    private static double parseDuration(@NotNull List<String> messages) {
-        for (String message : messages) {
-            for (String token : message.split(",")) {
-                Matcher videoDurationMatcher = DURATION_PATTERN.matcher(token);
-                if (videoDurationMatcher.find()) {
-                    return Integer.parseInt(videoDurationMatcher.group("hour")) * 60 * 60 + Integer.parseInt(videoDurationMatcher.group("minute")) * 60 + Integer.parseInt(videoDurationMatcher.group("second"));
-                }
-            }
-        }
-
-        return -1;
-    }
-
-    /**
-     * @param messages Output of "ffmpeg -i file"
-     */
-    @Nullable
-    private static String parseDurationDescription(@NotNull List<String> messages) {
-        for (String message : messages) {
-            for (String token : message.split(",")) {
-                Matcher videoDurationMatcher = DURATION_PATTERN.matcher(token);
-                if (videoDurationMatcher.find()) {
-                    return videoDurationMatcher.group("duration");
-                }
-            }
-        }
-
-        return null;
-    }
-
     /**
      * @param message Output of "ffmpeg -i input output"
      */
@@ -116,28 +44,18 @@ public class FfmpegUtil {
         return -1;
     }
 
+    /**
+     * @param messages Output of "ffmpeg -i file", see {@link VideoInfoParser} to parse lines as they come
+     */
+    @Nullable
     public static VideoInfo getVideoInfo(@NotNull List<String> messages) {
-        final Point videoSize = parseVideoSize(messages);
-        if (videoSize == null) {
-            return null;
-        }
-
-        final double frameRate = parseFrameRate(messages);
-        if (frameRate < 0) {
-            return null;
-        }
-
-        final String durationDescription = parseDurationDescription(messages);
-        if (durationDescription == null) {
-            return null;
-        }
-
-        final double duration = parseDuration(messages);
-        if (duration < 0) {
-            return null;
+        final VideoInfoParser parser = new VideoInfoParser();
+        for (String message : messages) {
+            if (parser.feed(message)) {
+                break;
+            }
         }
-
-        return new VideoInfo(videoSize, frameRate, durationDescription, duration);
+        return parser.getVideoInfo();
     }
 
     public static final class Duration {
@@ -159,12 +77,33 @@ public class FfmpegUtil {
         private final double frameRate;
         private final String durationDescription;
         private final double duration;
+        @Nullable
+        private final String videoCodec;
+        @Nullable
+        private final String pixelFormat;
+        private final int rotation;
+        private final int bitRate;
+        private final boolean hasAudio;
 
         public VideoInfo(@NotNull Point videoSize, double frameRate, @NotNull String durationDescription, double duration) {
+            this(videoSize, frameRate, durationDescription, duration, null, null, 0, -1, false);
+        }
+
+        /**
+         * @param rotation degree clockwise in [0, 360)
+         * @param bitRate  kb/s of the whole file, -1 if unknown
+         */
+        public VideoInfo(@NotNull Point videoSize, double frameRate, @NotNull String durationDescription, double duration,
+                         @Nullable String videoCodec, @Nullable String pixelFormat, int rotation, int bitRate, boolean hasAudio) {
             this.videoSize = videoSize;
             this.frameRate = frameRate;
             this.durationDescription = durationDescription;
             this.duration = duration;
+            this.videoCodec = videoCodec;
+            this.pixelFormat = pixelFormat;
+            this.rotation = rotation;
+            this.bitRate = bitRate;
+            this.hasAudio = hasAudio;
         }
 
         public String getDurationDescription() {
@@ -172,16 +111,50 @@ public class FfmpegUtil {
         }
 
         /**
-         * @return second
+         * @return second, with fraction
          */
         public double getDuration() {
             return duration;
         }
 
+        /**
+         * @return size of the coded frames, before rotation
+         */
+        @NotNull
+        public Point getVideoSize() {
+            return new Point(videoSize);
+        }
+
+        public double getFrameRate() {
+            return frameRate;
+        }
+
+        @Nullable
+        public String getVideoCodec() {
+            return videoCodec;
+        }
+
+        @Nullable
+        public String getPixelFormat() {
+            return pixelFormat;
+        }
+
+        public int getRotation() {
+            return rotation;
+        }
+
+        public int getBitRate() {
+            return bitRate;
+        }
+
+        public boolean hasAudio() {
+            return hasAudio;
+        }
+
         @NotNull
         @Override
         public String toString() {
-            return "" + videoSize.x + "x" + videoSize.y + ", " + frameRate + "fps, " + durationDescription;
+            return "" + videoSize.x + "x" + videoSize.y + ", " + frameRate + "fps, " + durationDescription + (videoCodec == null ? "" : ", " + videoCodec);
         }
 
     }
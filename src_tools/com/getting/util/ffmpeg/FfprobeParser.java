@@ -0,0 +1,246 @@
+package com.getting.util.ffmpeg;
+
+import com.getting.util.JsonReader;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.awt.*;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Read {@link FfmpegUtil.VideoInfo} from "ffprobe -print_format json" output as it streams in, see {@link ProbeExecuteTask}:
+ * <pre>
+ * {"streams": [{"codec_name": "h264", "codec_type": "video", "width": 1280, "height": 720, "pix_fmt": "yuv420p",
+ *               "r_frame_rate": "30000/1001", "avg_frame_rate": "30000/1001", "tags": {"rotate": "90"}}],
+ *  "format": {"duration": "65.430000", "bit_rate": "1205000"}}
+ * </pre>
+ * Members not needed are skipped without being kept.
+ */
+public class FfprobeParser {
+
+    private boolean hasVideo;
+
+    private boolean hasAudio;
+
+    @Nullable
+    private String videoCodec;
+
+    @Nullable
+    private String pixelFormat;
+
+    private int width = -1;
+
+    private int height = -1;
+
+    private double frameRate = -1;
+
+    private int rotation;
+
+    private double duration = -1;
+
+    private int bitRate = -1;
+
+    /**
+     * @return null if there is no video stream with size, frame rate and duration
+     */
+    @Nullable
+    public static FfmpegUtil.VideoInfo parse(@NotNull Reader reader) throws IOException {
+        return new FfprobeParser().read(new JsonReader(reader));
+    }
+
+    @Nullable
+    private FfmpegUtil.VideoInfo read(@NotNull JsonReader reader) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if ("streams".equals(name)) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    readStream(reader);
+                }
+                reader.endArray();
+            } else if ("format".equals(name)) {
+                readFormat(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (width < 0 || height < 0 || frameRate <= 0 || duration < 0) {
+            return null;
+        }
+
+        return new FfmpegUtil.VideoInfo(new Point(width, height), frameRate, formatDuration(duration), duration,
+                videoCodec, pixelFormat, rotation, bitRate, hasAudio);
+    }
+
+    private void readStream(@NotNull JsonReader reader) throws IOException {
+        String codecType = null;
+        String codecName = null;
+        String streamPixelFormat = null;
+        int streamWidth = -1;
+        int streamHeight = -1;
+        double averageFrameRate = -1;
+        double realFrameRate = -1;
+        double streamRotation = Double.NaN;
+        boolean attachedPicture = false;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "codec_type":
+                    codecType = reader.nextString();
+                    break;
+                case "codec_name":
+                    codecName = reader.nextString();
+                    break;
+                case "pix_fmt":
+                    streamPixelFormat = reader.nextString();
+                    break;
+                case "width":
+                    streamWidth = (int) reader.nextDouble();
+                    break;
+                case "height":
+                    streamHeight = (int) reader.nextDouble();
+                    break;
+                case "avg_frame_rate":
+                    averageFrameRate = parseRate(reader.nextString());
+                    break;
+                case "r_frame_rate":
+                    realFrameRate = parseRate(reader.nextString());
+                    break;
+                case "tags":
+                    streamRotation = readRotateTag(reader, streamRotation);
+                    break;
+                case "side_data_list":
+                    streamRotation = readDisplayMatrixRotation(reader, streamRotation);
+                    break;
+                case "disposition":
+                    attachedPicture = readAttachedPicture(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if ("audio".equals(codecType)) {
+            hasAudio = true;
+        }
+        if (!"video".equals(codecType) || attachedPicture || hasVideo) {
+            return;
+        }
+
+        hasVideo = true;
+        videoCodec = codecName;
+        pixelFormat = streamPixelFormat;
+        width = streamWidth;
+        height = streamHeight;
+        frameRate = averageFrameRate > 0 ? averageFrameRate : realFrameRate;
+        if (!Double.isNaN(streamRotation)) {
+            rotation = (int) Math.round(((streamRotation % 360) + 360) % 360);
+        }
+    }
+
+    private void readFormat(@NotNull JsonReader reader) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "duration":
+                    final double value = reader.nextDouble();
+                    duration = Double.isNaN(value) ? -1 : value;
+                    break;
+                case "bit_rate":
+                    final double bitsPerSecond = reader.nextDouble();
+                    bitRate = Double.isNaN(bitsPerSecond) ? -1 : (int) Math.round(bitsPerSecond / 1000);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+    }
+
+    private static double readRotateTag(@NotNull JsonReader reader, double rotation) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("rotate".equals(reader.nextName())) {
+                rotation = reader.nextDouble();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return rotation;
+    }
+
+    /**
+     * Display matrix turns counterclockwise, the opposite of the rotate tag
+     */
+    private static double readDisplayMatrixRotation(@NotNull JsonReader reader, double rotation) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("rotation".equals(reader.nextName())) {
+                    final double value = reader.nextDouble();
+                    if (!Double.isNaN(value)) {
+                        rotation = -value;
+                    }
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        reader.endArray();
+        return rotation;
+    }
+
+    private static boolean readAttachedPicture(@NotNull JsonReader reader) throws IOException {
+        boolean attachedPicture = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("attached_pic".equals(reader.nextName())) {
+                attachedPicture = reader.nextDouble() == 1;
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return attachedPicture;
+    }
+
+    /**
+     * "30000/1001" or "25"
+     *
+     * @return -1 for unknown rate like "0/0"
+     */
+    private static double parseRate(@NotNull String rate) {
+        try {
+            final int slash = rate.indexOf('/');
+            if (slash < 0) {
+                return Double.parseDouble(rate);
+            }
+
+            final double denominator = Double.parseDouble(rate.substring(slash + 1));
+            return denominator == 0 ? -1 : Math.round(Double.parseDouble(rate.substring(0, slash)) / denominator * 100) / 100.0;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Same as "Duration: 00:01:05.43" of "ffmpeg -i"
+     */
+    @NotNull
+    private static String formatDuration(double duration) {
+        final long centiseconds = Math.round(duration * 100);
+        return String.format("%02d:%02d:%02d.%02d", centiseconds / 360000, centiseconds / 6000 % 60, centiseconds / 100 % 60, centiseconds % 100);
+    }
+
+}
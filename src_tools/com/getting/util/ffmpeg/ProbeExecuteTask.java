@@ -0,0 +1,51 @@
+package com.getting.util.ffmpeg;
+
+import com.getting.util.executor.ExecuteTask;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ffprobe prints only the entries {@link FfprobeParser} reads as json to standard output
+ */
+public class ProbeExecuteTask extends ExecuteTask {
+
+    private final File video;
+
+    public ProbeExecuteTask(@NotNull File video) {
+        this.video = video;
+    }
+
+    @NotNull
+    @Override
+    public List<String> buildParameters() {
+        List<String> command = new ArrayList<>();
+        command.add("-v");
+        command.add("error");
+        command.add("-print_format");
+        command.add("json");
+        // like -show_streams -show_format, but only the entries needed,
+        // newer ffmpeg writes no rotate tag and keeps the rotation only in the display matrix side data
+        command.add("-show_entries");
+        command.add("format=duration,bit_rate"
+                + ":stream=codec_type,codec_name,pix_fmt,width,height,avg_frame_rate,r_frame_rate"
+                + ":stream_tags=rotate:stream_side_data_list:stream_disposition=attached_pic");
+        command.add(video.getAbsolutePath());
+        return command;
+    }
+
+    @NotNull
+    public File getVideo() {
+        return video;
+    }
+
+    @Nullable
+    @Override
+    public File getOutputDirectory() {
+        return null;
+    }
+
+}
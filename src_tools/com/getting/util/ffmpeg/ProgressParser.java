@@ -0,0 +1,132 @@
+package com.getting.util.ffmpeg;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Parse output of "ffmpeg -progress pipe:1" line by line, without regex or splitting:
+ * <pre>
+ * frame=25
+ * fps=12.3
+ * total_size=102400
+ * out_time_ms=1000000
+ * speed=2.03x
+ * progress=continue
+ * </pre>
+ * Not thread safe, use one parser for each process.
+ */
+public class ProgressParser {
+
+    private long frame = -1;
+
+    private double fps = -1;
+
+    private long outTimeMicroseconds = -1;
+
+    private long totalSize = -1;
+
+    private double speed = -1;
+
+    /**
+     * @return a progress after the "progress=" line which ends every block, otherwise null
+     */
+    @Nullable
+    public FfmpegProgress feed(@NotNull String line) {
+        final int separator = line.indexOf('=');
+        if (separator <= 0) {
+            return null;
+        }
+
+        final int valueStart = separator + 1;
+        if (isKey(line, separator, "frame")) {
+            frame = parseLong(line, valueStart);
+        } else if (isKey(line, separator, "fps")) {
+            fps = parseDouble(line, valueStart);
+        } else if (isKey(line, separator, "out_time_us") || isKey(line, separator, "out_time_ms")) {
+            // out_time_ms is in microseconds too
+            outTimeMicroseconds = parseLong(line, valueStart);
+        } else if (isKey(line, separator, "total_size")) {
+            totalSize = parseLong(line, valueStart);
+        } else if (isKey(line, separator, "speed")) {
+            speed = parseDouble(line, valueStart);
+        } else if (isKey(line, separator, "progress")) {
+            return new FfmpegProgress(frame, fps, outTimeMicroseconds, totalSize, speed, line.startsWith("end", valueStart));
+        }
+
+        return null;
+    }
+
+    private static boolean isKey(@NotNull String line, int separator, @NotNull String key) {
+        return separator == key.length() && line.startsWith(key);
+    }
+
+    private static int skipSpaces(@NotNull String line, int index) {
+        while (index < line.length() && line.charAt(index) == ' ') {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * @return -1 if not a number, like "N/A"
+     */
+    private static long parseLong(@NotNull String line, int start) {
+        int index = skipSpaces(line, start);
+        boolean negative = index < line.length() && line.charAt(index) == '-';
+        if (negative) {
+            index++;
+        }
+
+        long value = 0;
+        boolean hasDigit = false;
+        for (; index < line.length(); index++) {
+            final char c = line.charAt(index);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            value = value * 10 + (c - '0');
+            hasDigit = true;
+        }
+
+        if (!hasDigit || negative) {
+            return -1;
+        }
+        return value;
+    }
+
+    /**
+     * Accept "12.3" and "2.03x", return -1 if not a number
+     */
+    private static double parseDouble(@NotNull String line, int start) {
+        int index = skipSpaces(line, start);
+        long integer = 0;
+        long fraction = 0;
+        long fractionScale = 1;
+        boolean hasDigit = false;
+        boolean inFraction = false;
+        for (; index < line.length(); index++) {
+            final char c = line.charAt(index);
+            if (c == '.' && !inFraction) {
+                inFraction = true;
+            } else if (c >= '0' && c <= '9') {
+                hasDigit = true;
+                if (inFraction) {
+                    if (fractionScale < 1000000000L) {
+                        fraction = fraction * 10 + (c - '0');
+                        fractionScale *= 10;
+                    }
+                } else {
+                    integer = integer * 10 + (c - '0');
+                }
+            } else {
+                break;
+            }
+        }
+
+        if (!hasDigit) {
+            return -1;
+        }
+        return integer + (double) fraction / fractionScale;
+    }
+
+}
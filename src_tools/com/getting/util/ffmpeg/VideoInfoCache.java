@@ -0,0 +1,220 @@
+package com.getting.util.ffmpeg;
+
+import com.getting.util.FileCache;
+import com.getting.util.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.*;
+import java.io.*;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Least recently used {@link FfmpegUtil.VideoInfo} in memory, saved to disk so that known videos are never probed again.
+ * Key is the canonical path, length and last modified time of the video.
+ * The file is plain fields written by {@link DataOutputStream}, checked when read, a file that does not pass is ignored.
+ */
+public class VideoInfoCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VideoInfoCache.class);
+
+    private static final long SAVE_DELAY = 1000;
+
+    private static final int MAGIC = 0x47435649;
+
+    private static final int VERSION = 1;
+
+    @NotNull
+    private final FileCache fileCache;
+
+    @NotNull
+    private final File cacheFile;
+
+    private final int capacity;
+
+    @NotNull
+    private final LinkedHashMap<String, FfmpegUtil.VideoInfo> videoInfos;
+
+    private final ScheduledExecutorService saver = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable);
+        thread.setName("Thread-VideoInfoCache");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private boolean loaded;
+
+    private boolean saveScheduled;
+
+    /**
+     * @param fileName saved in the directory of fileCache
+     */
+    public VideoInfoCache(@NotNull FileCache fileCache, @NotNull String fileName, int capacity) {
+        this.fileCache = fileCache;
+        this.cacheFile = new File(fileCache.getDirectory(), fileName);
+        this.capacity = capacity;
+        videoInfos = new LinkedHashMap<String, FfmpegUtil.VideoInfo>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, FfmpegUtil.VideoInfo> eldest) {
+                return size() > VideoInfoCache.this.capacity;
+            }
+        };
+        Runtime.getRuntime().addShutdownHook(new Thread(this::save));
+    }
+
+    @Nullable
+    public FfmpegUtil.VideoInfo get(@NotNull File video) {
+        synchronized (videoInfos) {
+            ensureLoaded();
+            return videoInfos.get(FileUtil.getFileIdentity(video));
+        }
+    }
+
+    public void put(@NotNull File video, @NotNull FfmpegUtil.VideoInfo videoInfo) {
+        synchronized (videoInfos) {
+            ensureLoaded();
+            videoInfos.put(FileUtil.getFileIdentity(video), videoInfo);
+            if (!saveScheduled) {
+                saveScheduled = true;
+                saver.schedule(this::save, SAVE_DELAY, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+
+        loaded = true;
+        videoInfos.putAll(read());
+        LOGGER.info("load " + videoInfos.size() + " video info from " + cacheFile);
+    }
+
+    private void save() {
+        LinkedHashMap<String, FfmpegUtil.VideoInfo> snapshot;
+        synchronized (videoInfos) {
+            if (!saveScheduled) {
+                return;
+            }
+
+            saveScheduled = false;
+            snapshot = new LinkedHashMap<>(videoInfos);
+        }
+
+        // keep what another instance saved since this one loaded, entries of this one are newer
+        LinkedHashMap<String, FfmpegUtil.VideoInfo> merged = read();
+        for (Map.Entry<String, FfmpegUtil.VideoInfo> entry : snapshot.entrySet()) {
+            merged.remove(entry.getKey());
+            merged.put(entry.getKey(), entry.getValue());
+        }
+        Iterator<String> eldest = merged.keySet().iterator();
+        while (merged.size() > capacity) {
+            eldest.next();
+            eldest.remove();
+        }
+
+        File partFile = fileCache.getPartFile(cacheFile);
+        try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(partFile)))) {
+            outputStream.writeInt(MAGIC);
+            outputStream.writeInt(VERSION);
+            outputStream.writeInt(merged.size());
+            for (Map.Entry<String, FfmpegUtil.VideoInfo> entry : merged.entrySet()) {
+                outputStream.writeUTF(entry.getKey());
+                write(outputStream, entry.getValue());
+            }
+        } catch (IOException e) {
+            LOGGER.error("save", e);
+            partFile.delete();
+            return;
+        }
+
+        fileCache.commit(partFile, cacheFile);
+    }
+
+    /**
+     * @return entries of the file from least to most recently used, empty if there is none or it is invalid
+     */
+    @NotNull
+    private LinkedHashMap<String, FfmpegUtil.VideoInfo> read() {
+        LinkedHashMap<String, FfmpegUtil.VideoInfo> entries = new LinkedHashMap<>();
+        if (!cacheFile.isFile()) {
+            return entries;
+        }
+
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+            if (inputStream.readInt() != MAGIC || inputStream.readInt() != VERSION) {
+                throw new IOException("unknown format");
+            }
+
+            final int count = inputStream.readInt();
+            if (count < 0) {
+                throw new IOException("count " + count);
+            }
+            for (int i = 0; i < count; i++) {
+                final String key = inputStream.readUTF();
+                entries.put(key, read(inputStream));
+            }
+        } catch (IOException e) {
+            // written by an old version or broken, just probe again
+            LOGGER.error("read " + cacheFile, e);
+            entries.clear();
+        }
+        return entries;
+    }
+
+    private static void write(@NotNull DataOutputStream outputStream, @NotNull FfmpegUtil.VideoInfo videoInfo) throws IOException {
+        outputStream.writeInt(videoInfo.getVideoSize().x);
+        outputStream.writeInt(videoInfo.getVideoSize().y);
+        outputStream.writeDouble(videoInfo.getFrameRate());
+        outputStream.writeUTF(videoInfo.getDurationDescription());
+        outputStream.writeDouble(videoInfo.getDuration());
+        writeNullable(outputStream, videoInfo.getVideoCodec());
+        writeNullable(outputStream, videoInfo.getPixelFormat());
+        outputStream.writeInt(videoInfo.getRotation());
+        outputStream.writeInt(videoInfo.getBitRate());
+        outputStream.writeBoolean(videoInfo.hasAudio());
+    }
+
+    @NotNull
+    private static FfmpegUtil.VideoInfo read(@NotNull DataInputStream inputStream) throws IOException {
+        final int width = inputStream.readInt();
+        final int height = inputStream.readInt();
+        final double frameRate = inputStream.readDouble();
+        final String durationDescription = inputStream.readUTF();
+        final double duration = inputStream.readDouble();
+        final String videoCodec = readNullable(inputStream);
+        final String pixelFormat = readNullable(inputStream);
+        final int rotation = inputStream.readInt();
+        final int bitRate = inputStream.readInt();
+        final boolean hasAudio = inputStream.readBoolean();
+        // same as accepted by the parsers
+        if (width < 0 || height < 0 || !(frameRate >= 0) || Double.isInfinite(frameRate)
+                || !(duration >= 0) || Double.isInfinite(duration) || rotation < 0 || rotation >= 360 || bitRate < -1) {
+            throw new IOException("invalid video info " + width + "x" + height + ", " + frameRate + "fps, " + duration + "s");
+        }
+
+        return new FfmpegUtil.VideoInfo(new Point(width, height), frameRate, durationDescription, duration,
+                videoCodec, pixelFormat, rotation, bitRate, hasAudio);
+    }
+
+    private static void writeNullable(@NotNull DataOutputStream outputStream, @Nullable String value) throws IOException {
+        outputStream.writeBoolean(value != null);
+        if (value != null) {
+            outputStream.writeUTF(value);
+        }
+    }
+
+    @Nullable
+    private static String readNullable(@NotNull DataInputStream inputStream) throws IOException {
+        return inputStream.readBoolean() ? inputStream.readUTF() : null;
+    }
+
+}
@@ -12,6 +12,8 @@ public class VideoInfoExecuteTask extends ExecuteTask {
 
     private final File video;
 
+    private final VideoInfoParser parser = new VideoInfoParser();
+
     public VideoInfoExecuteTask(@NotNull File video) {
         this.video = video;
     }
@@ -25,6 +27,22 @@ public class VideoInfoExecuteTask extends ExecuteTask {
         return command;
     }
 
+    /**
+     * Parse lines as they come, the process is stopped once the header is complete
+     */
+    @Override
+    public boolean isMessageEnough(@NotNull String message) {
+        return parser.feed(message);
+    }
+
+    /**
+     * @return null if the video can not be read
+     */
+    @Nullable
+    public FfmpegUtil.VideoInfo getVideoInfo() {
+        return parser.getVideoInfo();
+    }
+
     @Nullable
     @Override
     public File getOutputDirectory() {
@@ -0,0 +1,323 @@
+package com.getting.util.ffmpeg;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.awt.*;
+
+/**
+ * Parse the header of "ffmpeg -i file" line by line as it is printed, each line is read once:
+ * <pre>
+ * Input #0, mov,mp4,m4a,3gp,3g2,mj2, from 'a.mp4':
+ *   Duration: 00:01:05.43, start: 0.000000, bitrate: 1205 kb/s
+ *     Stream #0:0(und): Video: h264 (High) (avc1 / 0x31637661), yuv420p(tv, bt709), 1280x720 [SAR 1:1 DAR 16:9], 1071 kb/s, 29.97 fps, 29.97 tbr, 30k tbn (default)
+ *     Metadata:
+ *       rotate          : 90
+ *     Stream #0:1(und): Audio: aac (LC) (mp4a / 0x6134706D), 44100 Hz, stereo, fltp, 128 kb/s (default)
+ * At least one output file must be specified
+ * </pre>
+ * Only the first input and its first video stream are read. Not thread safe, use one parser for each process.
+ */
+public class VideoInfoParser {
+
+    private static final String INPUT = "Input #";
+
+    private static final String DURATION = "Duration: ";
+
+    private static final String BITRATE = "bitrate: ";
+
+    private static final String STREAM = "Stream #";
+
+    private static final String VIDEO = ": Video: ";
+
+    private static final String AUDIO = ": Audio: ";
+
+    private static final String ROTATE = "rotate";
+
+    private static final String DISPLAY_MATRIX_ROTATION = "rotation of ";
+
+    private boolean inputStarted;
+
+    private boolean complete;
+
+    /**
+     * The lines being read belong to the first video stream, like its metadata
+     */
+    private boolean inVideoStream;
+
+    private boolean hasVideo;
+
+    @Nullable
+    private String durationDescription;
+
+    private double duration = -1;
+
+    private int bitRate = -1;
+
+    @Nullable
+    private String videoCodec;
+
+    @Nullable
+    private String pixelFormat;
+
+    private int width = -1;
+
+    private int height = -1;
+
+    private double frameRate = -1;
+
+    private int rotation;
+
+    private boolean hasAudio;
+
+    /**
+     * @return true if the header is complete, the following lines need not be read
+     */
+    public boolean feed(@NotNull String line) {
+        if (complete) {
+            return true;
+        }
+
+        if (line.startsWith(INPUT)) {
+            if (inputStarted) {
+                // second input
+                complete = true;
+            }
+            inputStarted = true;
+            return complete;
+        }
+
+        if (!inputStarted) {
+            return false;
+        }
+
+        if (!line.isEmpty() && line.charAt(0) != ' ') {
+            // header lines are indented
+            complete = true;
+            return true;
+        }
+
+        final int start = skipSpaces(line, 0);
+        if (line.startsWith(DURATION, start)) {
+            parseDurationLine(line, start + DURATION.length());
+        } else if (line.startsWith(STREAM, start)) {
+            inVideoStream = false;
+            final int video = line.indexOf(VIDEO, start);
+            if (video >= 0 && !hasVideo && !line.contains("(attached pic)")) {
+                hasVideo = true;
+                inVideoStream = true;
+                parseVideoStream(line, video + VIDEO.length());
+            } else if (line.indexOf(AUDIO, start) >= 0) {
+                hasAudio = true;
+            }
+        } else if (inVideoStream) {
+            parseVideoStreamDetail(line, start);
+        }
+
+        return false;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * @return null if no video stream with size, frame rate and duration has been read
+     */
+    @Nullable
+    public FfmpegUtil.VideoInfo getVideoInfo() {
+        if (width < 0 || height < 0 || frameRate < 0 || durationDescription == null || duration < 0) {
+            return null;
+        }
+
+        return new FfmpegUtil.VideoInfo(new Point(width, height), frameRate, durationDescription, duration,
+                videoCodec, pixelFormat, rotation, bitRate, hasAudio);
+    }
+
+    /**
+     * "00:01:05.43, start: 0.000000, bitrate: 1205 kb/s", duration may be "N/A"
+     */
+    private void parseDurationLine(@NotNull String line, int start) {
+        final int end = indexOf(line, ',', start);
+        final String description = line.substring(start, end);
+        final double seconds = parseTime(description);
+        if (seconds >= 0) {
+            durationDescription = description;
+            duration = seconds;
+        }
+
+        final int bitRateStart = line.indexOf(BITRATE, end);
+        if (bitRateStart >= 0) {
+            final double value = parseNumber(line, bitRateStart + BITRATE.length());
+            bitRate = value >= 0 ? (int) value : -1;
+        }
+    }
+
+    /**
+     * "h264 (High) (avc1 / 0x31637661), yuv420p(tv, bt709), 1280x720 [SAR 1:1 DAR 16:9], 1071 kb/s, 29.97 fps, ..."
+     * separated by commas out of parentheses
+     */
+    private void parseVideoStream(@NotNull String line, int start) {
+        int tokenIndex = 0;
+        double tbr = -1;
+        while (start < line.length()) {
+            final int end = indexOfTopLevelComma(line, start);
+            final int tokenStart = skipSpaces(line, start);
+            if (tokenIndex == 0) {
+                videoCodec = line.substring(tokenStart, indexOf(line, ' ', tokenStart, end));
+            } else if (width < 0 && parseSize(line, tokenStart, end)) {
+                // size found
+            } else if (tokenIndex == 1) {
+                pixelFormat = line.substring(tokenStart, indexOf(line, '(', tokenStart, end)).trim();
+            } else if (line.startsWith(" fps", end - 4)) {
+                frameRate = positiveOrUnknown(parseNumber(line, tokenStart));
+            } else if (line.startsWith(" tbr", end - 4)) {
+                tbr = positiveOrUnknown(parseNumber(line, tokenStart));
+            }
+
+            tokenIndex++;
+            start = end + 1;
+        }
+
+        if (frameRate < 0) {
+            frameRate = tbr;
+        }
+    }
+
+    /**
+     * Metadata "rotate : 90" of older ffmpeg, or side data "displaymatrix: rotation of -90.00 degrees"
+     */
+    private void parseVideoStreamDetail(@NotNull String line, int start) {
+        if (line.startsWith(ROTATE, start)) {
+            final int colon = line.indexOf(':', start);
+            if (colon > 0) {
+                setRotation(parseNumber(line, colon + 1));
+            }
+            return;
+        }
+
+        final int rotationStart = line.indexOf(DISPLAY_MATRIX_ROTATION, start);
+        if (rotationStart >= 0) {
+            // display matrix turns counterclockwise
+            setRotation(-parseNumber(line, rotationStart + DISPLAY_MATRIX_ROTATION.length()));
+        }
+    }
+
+    private static double positiveOrUnknown(double value) {
+        return value > 0 ? value : -1;
+    }
+
+    private void setRotation(double degree) {
+        if (Double.isNaN(degree)) {
+            return;
+        }
+
+        rotation = (int) Math.round(((degree % 360) + 360) % 360);
+    }
+
+    /**
+     * "1280x720" or "1280x720 [SAR 1:1 DAR 16:9]"
+     */
+    private boolean parseSize(@NotNull String line, int start, int end) {
+        int index = start;
+        int parsedWidth = 0;
+        while (index < end && Character.isDigit(line.charAt(index))) {
+            parsedWidth = parsedWidth * 10 + (line.charAt(index++) - '0');
+        }
+        if (index == start || index >= end || line.charAt(index) != 'x') {
+            return false;
+        }
+
+        final int heightStart = ++index;
+        int parsedHeight = 0;
+        while (index < end && Character.isDigit(line.charAt(index))) {
+            parsedHeight = parsedHeight * 10 + (line.charAt(index++) - '0');
+        }
+        if (index == heightStart || (index < end && line.charAt(index) != ' ')) {
+            return false;
+        }
+
+        width = parsedWidth;
+        height = parsedHeight;
+        return true;
+    }
+
+    /**
+     * "hh:mm:ss.xx" to second with fraction
+     *
+     * @return -1 if not a time, like "N/A"
+     */
+    private static double parseTime(@NotNull String time) {
+        final int firstColon = time.indexOf(':');
+        final int secondColon = firstColon < 0 ? -1 : time.indexOf(':', firstColon + 1);
+        if (secondColon < 0) {
+            return -1;
+        }
+
+        try {
+            return Integer.parseInt(time.substring(0, firstColon)) * 60 * 60
+                    + Integer.parseInt(time.substring(firstColon + 1, secondColon)) * 60
+                    + Double.parseDouble(time.substring(secondColon + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Number at start like "29.97", "-90.00" or "30k"
+     *
+     * @return NaN if not a number, like "N/A"
+     */
+    private static double parseNumber(@NotNull String line, int start) {
+        start = skipSpaces(line, start);
+        int end = start;
+        if (end < line.length() && line.charAt(end) == '-') {
+            end++;
+        }
+        while (end < line.length() && (Character.isDigit(line.charAt(end)) || line.charAt(end) == '.')) {
+            end++;
+        }
+
+        try {
+            final double value = Double.parseDouble(line.substring(start, end));
+            return end < line.length() && line.charAt(end) == 'k' ? value * 1000 : value;
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static int skipSpaces(@NotNull String line, int index) {
+        while (index < line.length() && line.charAt(index) == ' ') {
+            index++;
+        }
+        return index;
+    }
+
+    private static int indexOf(@NotNull String line, char c, int start) {
+        return indexOf(line, c, start, line.length());
+    }
+
+    /**
+     * @return end if c is not found before it
+     */
+    private static int indexOf(@NotNull String line, char c, int start, int end) {
+        final int index = line.indexOf(c, start);
+        return index < 0 || index > end ? end : index;
+    }
+
+    private static int indexOfTopLevelComma(@NotNull String line, int start) {
+        int depth = 0;
+        for (int i = start; i < line.length(); i++) {
+            final char c = line.charAt(i);
+            if (c == '(' || c == '[') {
+                depth++;
+            } else if ((c == ')' || c == ']') && depth > 0) {
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                return i;
+            }
+        }
+        return line.length();
+    }
+
+}
@@ -0,0 +1,350 @@
+package com.getting.util.gif;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Streaming GIF89a writer of rgb24 frames:
+ * <ul>
+ * <li>only the bounding box of pixels changed since they were last drawn is written, the rest of the last frame stays</li>
+ * <li>unchanged pixels inside the box are transparent, which compresses to almost nothing</li>
+ * <li>each frame has its own palette of the changed pixels, see {@link MedianCutQuantizer}</li>
+ * </ul>
+ * Finding the changed box depends on the frames before, so it runs in order on the adding thread. Quantization and
+ * LZW of each frame depend on nothing else, with a pool they run on many cores while later frames are added, and
+ * are written in order as they finish.
+ * Not thread safe, one encoder per output.
+ */
+public class GifEncoder {
+
+    /**
+     * A pixel is unchanged if no channel differs more than this from when it was last drawn, which hides the noise
+     * of decoded video without letting slow changes drift
+     */
+    public static final int DEFAULT_TOLERANCE = 3;
+
+    private static final int TRANSPARENT = -1;
+
+    /**
+     * Tables are large, each thread keeps its own for all frames it encodes
+     */
+    private static final ThreadLocal<MedianCutQuantizer> QUANTIZERS = ThreadLocal.withInitial(MedianCutQuantizer::new);
+
+    private static final ThreadLocal<LzwEncoder> LZW_ENCODERS = ThreadLocal.withInitial(LzwEncoder::new);
+
+    @NotNull
+    private final OutputStream outputStream;
+
+    private final int width;
+
+    private final int height;
+
+    private final int tolerance;
+
+    /**
+     * Color of each pixel when it was last drawn, 0xRRGGBB
+     */
+    private final int[] shown;
+
+    /**
+     * Null to encode on the adding thread
+     */
+    @Nullable
+    private final ForkJoinPool pool;
+
+    /**
+     * Frames being encoded in adding order, at most {@link #maxPendingFrames}
+     */
+    private final Deque<CompletableFuture<byte[]>> pendingFrames = new ArrayDeque<>();
+
+    private final int maxPendingFrames;
+
+    private int frameCount;
+
+    private boolean finished;
+
+    public GifEncoder(@NotNull OutputStream outputStream, int width, int height) {
+        this(outputStream, width, height, DEFAULT_TOLERANCE);
+    }
+
+    /**
+     * @param tolerance 0 to write every changed pixel, see {@link #DEFAULT_TOLERANCE}
+     */
+    public GifEncoder(@NotNull OutputStream outputStream, int width, int height, int tolerance) {
+        this(outputStream, width, height, tolerance, null);
+    }
+
+    /**
+     * @param pool encode frames on it, at most twice its parallelism frames are held waiting to be written
+     */
+    public GifEncoder(@NotNull OutputStream outputStream, int width, int height, int tolerance, @Nullable ForkJoinPool pool) {
+        if (width < 1 || height < 1 || width > 0xFFFF || height > 0xFFFF) {
+            throw new IllegalArgumentException("size " + width + "x" + height);
+        }
+
+        this.outputStream = outputStream;
+        this.width = width;
+        this.height = height;
+        this.tolerance = tolerance;
+        this.pool = pool;
+        maxPendingFrames = pool == null ? 0 : pool.getParallelism() * 2;
+        shown = new int[width * height];
+    }
+
+    /**
+     * @param rgb   width * height * 3 bytes, row by row
+     * @param delay showing time of the frame in 1/100 second
+     */
+    public void addFrame(@NotNull byte[] rgb, int delay) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("finished");
+        }
+        if (rgb.length < width * height * 3) {
+            throw new IllegalArgumentException("frame of " + rgb.length + " bytes is smaller than " + width + "x" + height);
+        }
+
+        if (frameCount == 0) {
+            writeHeader();
+        }
+
+        final Region region = frameCount == 0 ? fullRegion(rgb) : changedRegion(rgb);
+        frameCount++;
+        if (pool == null) {
+            outputStream.write(encodeFrame(region, delay));
+            return;
+        }
+
+        pendingFrames.addLast(CompletableFuture.supplyAsync(() -> {
+            try {
+                return encodeFrame(region, delay);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, pool));
+        // write finished frames in order, wait for the oldest if too many are held
+        while (!pendingFrames.isEmpty() && (pendingFrames.size() > maxPendingFrames || pendingFrames.peekFirst().isDone())) {
+            writePendingFrame();
+        }
+    }
+
+    /**
+     * Write the trailer, the output stream is flushed but not closed
+     *
+     * @throws IllegalStateException if no frame is added, an empty gif is invalid
+     */
+    public void finish() throws IOException {
+        if (frameCount == 0) {
+            throw new IllegalStateException("no frame");
+        }
+        if (finished) {
+            return;
+        }
+
+        while (!pendingFrames.isEmpty()) {
+            writePendingFrame();
+        }
+        finished = true;
+        outputStream.write(0x3B);
+        outputStream.flush();
+    }
+
+    /**
+     * @return frames added, some may not be written yet
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    private void writePendingFrame() throws IOException {
+        final byte[] frame;
+        try {
+            frame = pendingFrames.removeFirst().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        }
+        outputStream.write(frame);
+    }
+
+    private void writeHeader() throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream(64);
+        header.write(new byte[]{'G', 'I', 'F', '8', '9', 'a'});
+        // logical screen without global color table
+        writeShort(header, width);
+        writeShort(header, height);
+        header.write(0);
+        header.write(0);
+        header.write(0);
+        // loop forever
+        header.write(0x21);
+        header.write(0xFF);
+        header.write(11);
+        header.write(new byte[]{'N', 'E', 'T', 'S', 'C', 'A', 'P', 'E', '2', '.', '0'});
+        header.write(3);
+        header.write(1);
+        writeShort(header, 0);
+        header.write(0);
+        header.writeTo(outputStream);
+    }
+
+    @NotNull
+    private Region fullRegion(@NotNull byte[] rgb) {
+        for (int i = 0, j = 0; i < shown.length; i++, j += 3) {
+            shown[i] = toPixel(rgb, j);
+        }
+        return new Region(0, 0, width, height, shown.clone());
+    }
+
+    /**
+     * Compare with {@link #shown} and update it
+     *
+     * @return the bounding box of changed pixels, a transparent pixel if nothing changed
+     */
+    @NotNull
+    private Region changedRegion(@NotNull byte[] rgb) {
+        int left = width;
+        int top = height;
+        int right = -1;
+        int bottom = -1;
+        for (int y = 0, i = 0; y < height; y++) {
+            for (int x = 0; x < width; x++, i++) {
+                if (isChanged(shown[i], rgb, i * 3)) {
+                    left = Math.min(left, x);
+                    right = Math.max(right, x);
+                    top = Math.min(top, y);
+                    bottom = y;
+                }
+            }
+        }
+
+        if (right < 0) {
+            return new Region(0, 0, 1, 1, new int[]{TRANSPARENT});
+        }
+
+        final int[] regionPixels = new int[(right - left + 1) * (bottom - top + 1)];
+        int index = 0;
+        for (int y = top; y <= bottom; y++) {
+            for (int x = left, i = y * width + left; x <= right; x++, i++) {
+                if (isChanged(shown[i], rgb, i * 3)) {
+                    shown[i] = toPixel(rgb, i * 3);
+                    regionPixels[index++] = shown[i];
+                } else {
+                    regionPixels[index++] = TRANSPARENT;
+                }
+            }
+        }
+        return new Region(left, top, right - left + 1, bottom - top + 1, regionPixels);
+    }
+
+    private boolean isChanged(int pixel, @NotNull byte[] rgb, int offset) {
+        return Math.abs(((pixel >> 16) & 0xFF) - (rgb[offset] & 0xFF)) > tolerance
+                || Math.abs(((pixel >> 8) & 0xFF) - (rgb[offset + 1] & 0xFF)) > tolerance
+                || Math.abs((pixel & 0xFF) - (rgb[offset + 2] & 0xFF)) > tolerance;
+    }
+
+    private static int toPixel(@NotNull byte[] rgb, int offset) {
+        return (rgb[offset] & 0xFF) << 16 | (rgb[offset + 1] & 0xFF) << 8 | (rgb[offset + 2] & 0xFF);
+    }
+
+    /**
+     * Graphic control extension, image descriptor, local color table and image data of region, safe on any thread
+     */
+    @NotNull
+    private static byte[] encodeFrame(@NotNull Region region, int delay) throws IOException {
+        final int[] regionPixels = region.pixels;
+        final int pixelCount = regionPixels.length;
+        final int[] opaquePixels = new int[pixelCount];
+        int opaqueCount = 0;
+        for (int i = 0; i < pixelCount; i++) {
+            if (regionPixels[i] != TRANSPARENT) {
+                opaquePixels[opaqueCount++] = regionPixels[i];
+            }
+        }
+
+        final MedianCutQuantizer quantizer = QUANTIZERS.get();
+        final boolean hasTransparent = opaqueCount < pixelCount;
+        final int paletteSize = quantizer.quantize(opaquePixels, opaqueCount, hasTransparent ? 255 : 256);
+        final int transparentIndex = paletteSize;
+        final byte[] indices = new byte[pixelCount];
+        for (int i = 0; i < pixelCount; i++) {
+            indices[i] = (byte) (regionPixels[i] == TRANSPARENT ? transparentIndex : quantizer.map(regionPixels[i]));
+        }
+
+        int tableBits = 1;
+        while (1 << tableBits < paletteSize + (hasTransparent ? 1 : 0)) {
+            tableBits++;
+        }
+
+        final ByteArrayOutputStream frameBuffer = new ByteArrayOutputStream(pixelCount / 2 + 1024);
+        frameBuffer.write(0x21);
+        frameBuffer.write(0xF9);
+        frameBuffer.write(4);
+        // keep the frame for the next one to draw over
+        frameBuffer.write(1 << 2 | (hasTransparent ? 1 : 0));
+        writeShort(frameBuffer, delay);
+        frameBuffer.write(hasTransparent ? transparentIndex : 0);
+        frameBuffer.write(0);
+
+        frameBuffer.write(0x2C);
+        writeShort(frameBuffer, region.left);
+        writeShort(frameBuffer, region.top);
+        writeShort(frameBuffer, region.width);
+        writeShort(frameBuffer, region.height);
+        frameBuffer.write(0x80 | (tableBits - 1));
+        final int[] palette = quantizer.getPalette();
+        for (int i = 0; i < 1 << tableBits; i++) {
+            final int color = i < paletteSize ? palette[i] : 0;
+            frameBuffer.write(color >> 16);
+            frameBuffer.write(color >> 8);
+            frameBuffer.write(color);
+        }
+
+        LZW_ENCODERS.get().encode(indices, pixelCount, Math.max(2, tableBits), frameBuffer);
+        frameBuffer.write(0);
+        return frameBuffer.toByteArray();
+    }
+
+    private static void writeShort(@NotNull OutputStream outputStream, int value) throws IOException {
+        outputStream.write(value & 0xFF);
+        outputStream.write((value >> 8) & 0xFF);
+    }
+
+    /**
+     * Part of a frame to write, pixels are 0xRRGGBB or {@link #TRANSPARENT} row by row
+     */
+    private static final class Region {
+
+        private final int left;
+
+        private final int top;
+
+        private final int width;
+
+        private final int height;
+
+        @NotNull
+        private final int[] pixels;
+
+        private Region(int left, int top, int width, int height, @NotNull int[] pixels) {
+            this.left = left;
+            this.top = top;
+            this.width = width;
+            this.height = height;
+            this.pixels = pixels;
+        }
+
+    }
+
+}
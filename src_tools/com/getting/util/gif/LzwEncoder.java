@@ -0,0 +1,149 @@
+package com.getting.util.gif;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Variable length LZW of gif image data, written as data sub-blocks. The string table is an open addressing hash
+ * of primitive arrays reused for every image, nothing is allocated per pixel or per image.
+ */
+public class LzwEncoder {
+
+    private static final int MAX_BITS = 12;
+
+    private static final int MAX_CODE = 1 << MAX_BITS;
+
+    /**
+     * Prime larger than {@link #MAX_CODE}, with the shift below it spreads keys well
+     */
+    private static final int TABLE_SIZE = 5003;
+
+    private static final int HASH_SHIFT = 4;
+
+    /**
+     * key (suffix << 12 | prefix) of each entry, -1 if empty
+     */
+    private final int[] keys = new int[TABLE_SIZE];
+
+    private final int[] codes = new int[TABLE_SIZE];
+
+    /**
+     * One sub-block, at most 255 bytes after its length
+     */
+    private final byte[] block = new byte[256];
+
+    private int blockLength;
+
+    private int bitBuffer;
+
+    private int bitCount;
+
+    private int codeSize;
+
+    /**
+     * Largest code of {@link #codeSize} bits
+     */
+    private int maxCodeOfSize;
+
+    /**
+     * @param indices     color index of each pixel, each less than 1 << minCodeSize
+     * @param minCodeSize 2 to 8, written before the data
+     * @param outputStream receive the code size and data sub-blocks, without the block terminator
+     */
+    public void encode(@NotNull byte[] indices, int length, int minCodeSize, @NotNull OutputStream outputStream) throws IOException {
+        final int clearCode = 1 << minCodeSize;
+        final int endCode = clearCode + 1;
+        outputStream.write(minCodeSize);
+        blockLength = 0;
+        bitBuffer = 0;
+        bitCount = 0;
+
+        Arrays.fill(keys, -1);
+        setCodeSize(minCodeSize + 1);
+        int nextCode = clearCode + 2;
+        writeCode(clearCode, nextCode, outputStream);
+
+        if (length > 0) {
+            int prefix = indices[0] & 0xFF;
+            for (int i = 1; i < length; i++) {
+                final int suffix = indices[i] & 0xFF;
+                final int key = (suffix << MAX_BITS) | prefix;
+                int hash = (suffix << HASH_SHIFT) ^ prefix;
+                final int step = hash == 0 ? 1 : TABLE_SIZE - hash;
+                while (keys[hash] >= 0 && keys[hash] != key) {
+                    hash -= step;
+                    if (hash < 0) {
+                        hash += TABLE_SIZE;
+                    }
+                }
+                if (keys[hash] == key) {
+                    prefix = codes[hash];
+                    continue;
+                }
+
+                writeCode(prefix, nextCode, outputStream);
+                prefix = suffix;
+                if (nextCode < MAX_CODE) {
+                    codes[hash] = nextCode++;
+                    keys[hash] = key;
+                } else {
+                    // table is full, start over
+                    writeCode(clearCode, nextCode, outputStream);
+                    Arrays.fill(keys, -1);
+                    setCodeSize(minCodeSize + 1);
+                    nextCode = clearCode + 2;
+                }
+            }
+            writeCode(prefix, nextCode, outputStream);
+        }
+        writeCode(endCode, nextCode, outputStream);
+
+        if (bitCount > 0) {
+            writeByte(bitBuffer & 0xFF, outputStream);
+        }
+        flushBlock(outputStream);
+    }
+
+    private void setCodeSize(int codeSize) {
+        this.codeSize = codeSize;
+        maxCodeOfSize = (1 << codeSize) - 1;
+    }
+
+    /**
+     * @param nextCode code of the next entry, the decoder is one entry behind so it decides the size after this code
+     */
+    private void writeCode(int code, int nextCode, @NotNull OutputStream outputStream) throws IOException {
+        bitBuffer |= code << bitCount;
+        bitCount += codeSize;
+        while (bitCount >= 8) {
+            writeByte(bitBuffer & 0xFF, outputStream);
+            bitBuffer >>>= 8;
+            bitCount -= 8;
+        }
+
+        if (nextCode > maxCodeOfSize && codeSize < MAX_BITS) {
+            setCodeSize(codeSize + 1);
+        }
+    }
+
+    private void writeByte(int b, @NotNull OutputStream outputStream) throws IOException {
+        block[++blockLength] = (byte) b;
+        if (blockLength == 255) {
+            flushBlock(outputStream);
+        }
+    }
+
+    private void flushBlock(@NotNull OutputStream outputStream) throws IOException {
+        if (blockLength == 0) {
+            return;
+        }
+
+        block[0] = (byte) blockLength;
+        outputStream.write(block, 0, blockLength + 1);
+        blockLength = 0;
+    }
+
+}
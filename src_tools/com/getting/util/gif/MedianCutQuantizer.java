@@ -0,0 +1,261 @@
+package com.getting.util.gif;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Median cut palette of 5 bit per channel color histogram: the box of most pixels is split at the median of its
+ * longest side until there are enough boxes, each box gives the mean color of its pixels. All tables are primitive
+ * arrays reused for every image.
+ */
+public class MedianCutQuantizer {
+
+    private static final int BITS = 5;
+
+    private static final int SIDE = 1 << BITS;
+
+    private static final int BIN_COUNT = SIDE * SIDE * SIDE;
+
+    private static final int MAX_COLORS = 256;
+
+    /**
+     * Pixel count and channel sums of each bin, bin is r << 10 | g << 5 | b of the high 5 bits
+     */
+    private final int[] counts = new int[BIN_COUNT];
+
+    private final long[] redSums = new long[BIN_COUNT];
+
+    private final long[] greenSums = new long[BIN_COUNT];
+
+    private final long[] blueSums = new long[BIN_COUNT];
+
+    /**
+     * Palette index of each bin, -1 if not looked up yet
+     */
+    private final int[] inverse = new int[BIN_COUNT];
+
+    /**
+     * Inclusive bounds of each box, index 0 to 2 for red, green and blue
+     */
+    private final int[][] lows = new int[MAX_COLORS][3];
+
+    private final int[][] highs = new int[MAX_COLORS][3];
+
+    private final int[] boxCounts = new int[MAX_COLORS];
+
+    private final int[] axisCounts = new int[SIDE];
+
+    private final int[] palette = new int[MAX_COLORS];
+
+    private int paletteSize;
+
+    /**
+     * Build the palette of pixels, replacing the last one
+     *
+     * @param pixels    0xRRGGBB
+     * @param maxColors 1 to 256
+     * @return colors of the palette, less than maxColors if the pixels have fewer
+     */
+    public int quantize(@NotNull int[] pixels, int length, int maxColors) {
+        if (maxColors < 1 || maxColors > MAX_COLORS) {
+            throw new IllegalArgumentException("maxColors " + maxColors);
+        }
+
+        Arrays.fill(counts, 0);
+        Arrays.fill(redSums, 0);
+        Arrays.fill(greenSums, 0);
+        Arrays.fill(blueSums, 0);
+        Arrays.fill(inverse, -1);
+        for (int i = 0; i < length; i++) {
+            final int pixel = pixels[i];
+            final int bin = toBin(pixel);
+            counts[bin]++;
+            redSums[bin] += (pixel >> 16) & 0xFF;
+            greenSums[bin] += (pixel >> 8) & 0xFF;
+            blueSums[bin] += pixel & 0xFF;
+        }
+
+        paletteSize = 0;
+        if (length == 0) {
+            return 0;
+        }
+
+        int boxCount = 1;
+        Arrays.fill(lows[0], 0);
+        Arrays.fill(highs[0], SIDE - 1);
+        boxCounts[0] = shrink(0);
+        while (boxCount < maxColors) {
+            final int box = findBoxToSplit(boxCount);
+            if (box < 0) {
+                break;
+            }
+
+            split(box, boxCount++);
+        }
+
+        for (int box = 0; box < boxCount; box++) {
+            palette[paletteSize++] = meanColor(box);
+        }
+        return paletteSize;
+    }
+
+    /**
+     * @return 0xRRGGBB of each palette index, valid to {@link #getPaletteSize()}
+     */
+    @NotNull
+    public int[] getPalette() {
+        return palette;
+    }
+
+    public int getPaletteSize() {
+        return paletteSize;
+    }
+
+    /**
+     * @return index of the palette color nearest to pixel, pixels of the same bin share it
+     */
+    public int map(int pixel) {
+        final int bin = toBin(pixel);
+        int index = inverse[bin];
+        if (index < 0) {
+            index = findNearest(bin);
+            inverse[bin] = index;
+        }
+        return index;
+    }
+
+    private static int toBin(int pixel) {
+        return ((pixel >> 9) & 0x7C00) | ((pixel >> 6) & 0x3E0) | ((pixel >> 3) & 0x1F);
+    }
+
+    /**
+     * The box of most pixels which has more than one bin
+     */
+    private int findBoxToSplit(int boxCount) {
+        int found = -1;
+        for (int box = 0; box < boxCount; box++) {
+            final boolean splittable = lows[box][0] < highs[box][0] || lows[box][1] < highs[box][1] || lows[box][2] < highs[box][2];
+            if (splittable && (found < 0 || boxCounts[box] > boxCounts[found])) {
+                found = box;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Split box along its longest side at the median pixel, the upper part becomes newBox
+     */
+    private void split(int box, int newBox) {
+        int axis = 0;
+        for (int i = 1; i < 3; i++) {
+            if (highs[box][i] - lows[box][i] > highs[box][axis] - lows[box][axis]) {
+                axis = i;
+            }
+        }
+
+        final int splitAxis = axis;
+        Arrays.fill(axisCounts, 0);
+        forEachBin(box, (bin, r, g, b) -> axisCounts[splitAxis == 0 ? r : splitAxis == 1 ? g : b] += counts[bin]);
+        int median = lows[box][axis];
+        int below = axisCounts[median];
+        while (median + 1 < highs[box][axis] && below * 2 < boxCounts[box]) {
+            below += axisCounts[++median];
+        }
+
+        System.arraycopy(lows[box], 0, lows[newBox], 0, 3);
+        System.arraycopy(highs[box], 0, highs[newBox], 0, 3);
+        highs[box][axis] = median;
+        lows[newBox][axis] = median + 1;
+        boxCounts[box] = shrink(box);
+        boxCounts[newBox] = shrink(newBox);
+    }
+
+    /**
+     * Fit the bounds of box to its used bins
+     *
+     * @return pixels in the box
+     */
+    private int shrink(int box) {
+        final int[] low = {SIDE, SIDE, SIDE};
+        final int[] high = {-1, -1, -1};
+        final int[] count = {0};
+        forEachBin(box, (bin, r, g, b) -> {
+            if (counts[bin] == 0) {
+                return;
+            }
+
+            count[0] += counts[bin];
+            low[0] = Math.min(low[0], r);
+            low[1] = Math.min(low[1], g);
+            low[2] = Math.min(low[2], b);
+            high[0] = Math.max(high[0], r);
+            high[1] = Math.max(high[1], g);
+            high[2] = Math.max(high[2], b);
+        });
+        if (count[0] > 0) {
+            System.arraycopy(low, 0, lows[box], 0, 3);
+            System.arraycopy(high, 0, highs[box], 0, 3);
+        }
+        return count[0];
+    }
+
+    private int meanColor(int box) {
+        final long[] sums = new long[4];
+        forEachBin(box, (bin, r, g, b) -> {
+            sums[0] += redSums[bin];
+            sums[1] += greenSums[bin];
+            sums[2] += blueSums[bin];
+            sums[3] += counts[bin];
+        });
+        if (sums[3] == 0) {
+            return 0;
+        }
+
+        final long half = sums[3] / 2;
+        return (int) ((sums[0] + half) / sums[3]) << 16 | (int) ((sums[1] + half) / sums[3]) << 8 | (int) ((sums[2] + half) / sums[3]);
+    }
+
+    /**
+     * Nearest to the mean color of the bin, or its center if the bin is not used by the pixels
+     */
+    private int findNearest(int bin) {
+        final int count = counts[bin];
+        final int red = count > 0 ? (int) (redSums[bin] / count) : (bin >> 10) << 3 | 4;
+        final int green = count > 0 ? (int) (greenSums[bin] / count) : ((bin >> 5) & 0x1F) << 3 | 4;
+        final int blue = count > 0 ? (int) (blueSums[bin] / count) : (bin & 0x1F) << 3 | 4;
+        int nearest = 0;
+        int nearestDistance = Integer.MAX_VALUE;
+        for (int i = 0; i < paletteSize; i++) {
+            final int color = palette[i];
+            final int dr = ((color >> 16) & 0xFF) - red;
+            final int dg = ((color >> 8) & 0xFF) - green;
+            final int db = (color & 0xFF) - blue;
+            final int distance = dr * dr + dg * dg + db * db;
+            if (distance < nearestDistance) {
+                nearest = i;
+                nearestDistance = distance;
+            }
+        }
+        return nearest;
+    }
+
+    private void forEachBin(int box, @NotNull BinVisitor visitor) {
+        final int[] low = lows[box];
+        final int[] high = highs[box];
+        for (int r = low[0]; r <= high[0]; r++) {
+            for (int g = low[1]; g <= high[1]; g++) {
+                for (int b = low[2]; b <= high[2]; b++) {
+                    visitor.visit(r << 10 | g << 5 | b, r, g, b);
+                }
+            }
+        }
+    }
+
+    private interface BinVisitor {
+
+        void visit(int bin, int red, int green, int blue);
+
+    }
+
+}
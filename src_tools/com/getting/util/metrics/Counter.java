@@ -0,0 +1,53 @@
+package com.getting.util.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Count of events which only goes up, like failed conversions
+ */
+public class Counter extends Metric {
+
+    private final LongAdder value = new LongAdder();
+
+    Counter(@NotNull String name, @NotNull String help) {
+        super(name, help);
+    }
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(long amount) {
+        if (amount < 0) {
+            throw new IllegalArgumentException("amount " + amount);
+        }
+
+        value.add(amount);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+
+    @Override
+    void writeSamples(@NotNull Writer writer) throws IOException {
+        writer.write(getName() + " " + get() + "\n");
+    }
+
+    @NotNull
+    @Override
+    String getType() {
+        return "counter";
+    }
+
+    @Override
+    void collectAttributes(@NotNull Map<String, Number> attributes) {
+        attributes.put(getName(), get());
+    }
+
+}
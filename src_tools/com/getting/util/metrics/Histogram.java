@@ -0,0 +1,184 @@
+package com.getting.util.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of values in fixed buckets, like the time of each conversion. Memory stays the same however many
+ * values are observed, quantiles are estimated by the upper bound of the bucket they fall in.
+ */
+public class Histogram extends Metric {
+
+    /**
+     * From 5 milliseconds for a cached probe to 2 minutes for a long palette conversion
+     */
+    public static final double[] SECONDS_BUCKETS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 120};
+
+    /**
+     * From 16KB to 64MB, by 4 times
+     */
+    public static final double[] BYTES_BUCKETS = exponentialBuckets(16 * 1024, 4, 7);
+
+    /**
+     * Encode speed relative to real time, like the "speed=2.03x" of ffmpeg
+     */
+    public static final double[] SPEED_BUCKETS = exponentialBuckets(0.125, 2, 10);
+
+    /**
+     * Upper bounds of the buckets but the last one, which is unbounded
+     */
+    @NotNull
+    private final double[] bounds;
+
+    /**
+     * Values in each bucket, not cumulative
+     */
+    @NotNull
+    private final LongAdder[] counts;
+
+    private final DoubleAdder sum = new DoubleAdder();
+
+    Histogram(@NotNull String name, @NotNull String help, @NotNull double[] bounds) {
+        super(name, help);
+        for (int i = 0; i < bounds.length; i++) {
+            if (Double.isNaN(bounds[i]) || (i > 0 && bounds[i] <= bounds[i - 1])) {
+                throw new IllegalArgumentException("bounds not ascending " + Arrays.toString(bounds));
+            }
+        }
+
+        this.bounds = bounds.clone();
+        counts = new LongAdder[bounds.length + 1];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @return start, start * factor, start * factor * factor, ... count bounds in all
+     */
+    @NotNull
+    public static double[] exponentialBuckets(double start, double factor, int count) {
+        if (start <= 0 || factor <= 1 || count < 1) {
+            throw new IllegalArgumentException("start " + start + ", factor " + factor + ", count " + count);
+        }
+
+        double[] bounds = new double[count];
+        bounds[0] = start;
+        for (int i = 1; i < count; i++) {
+            bounds[i] = bounds[i - 1] * factor;
+        }
+        return bounds;
+    }
+
+    /**
+     * NaN is ignored, for example an unknown speed
+     */
+    public void observe(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+
+        int index = Arrays.binarySearch(bounds, value);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        counts[index].increment();
+        sum.add(value);
+    }
+
+    /**
+     * Observe a time measured with {@link System#nanoTime()} as seconds
+     */
+    public void observeNanos(long nanos) {
+        observe((double) nanos / TimeUnit.SECONDS.toNanos(1));
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (LongAdder bucketCount : counts) {
+            count += bucketCount.sum();
+        }
+        return count;
+    }
+
+    public double getSum() {
+        return sum.sum();
+    }
+
+    @NotNull
+    public double[] getBounds() {
+        return bounds.clone();
+    }
+
+    /**
+     * @return values at most each bound, the last one is the count of all values
+     */
+    @NotNull
+    public long[] getCumulativeCounts() {
+        long[] cumulativeCounts = new long[counts.length];
+        long count = 0;
+        for (int i = 0; i < counts.length; i++) {
+            count += counts[i].sum();
+            cumulativeCounts[i] = count;
+        }
+        return cumulativeCounts;
+    }
+
+    /**
+     * @param quantile from 0 to 1, like 0.99
+     * @return upper bound of the bucket the quantile falls in, infinity if beyond the last bound, NaN if empty
+     */
+    public double getQuantile(double quantile) {
+        if (quantile < 0 || quantile > 1) {
+            throw new IllegalArgumentException("quantile " + quantile);
+        }
+
+        final long[] cumulativeCounts = getCumulativeCounts();
+        final long count = cumulativeCounts[cumulativeCounts.length - 1];
+        if (count == 0) {
+            return Double.NaN;
+        }
+
+        final long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        for (int i = 0; i < bounds.length; i++) {
+            if (cumulativeCounts[i] >= rank) {
+                return bounds[i];
+            }
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    @Override
+    void writeSamples(@NotNull Writer writer) throws IOException {
+        final long[] cumulativeCounts = getCumulativeCounts();
+        for (int i = 0; i < cumulativeCounts.length; i++) {
+            final double bound = i < bounds.length ? bounds[i] : Double.POSITIVE_INFINITY;
+            writer.write(getName() + "_bucket{le=\"" + formatNumber(bound) + "\"} " + cumulativeCounts[i] + "\n");
+        }
+        writer.write(getName() + "_sum " + formatNumber(getSum()) + "\n");
+        writer.write(getName() + "_count " + cumulativeCounts[cumulativeCounts.length - 1] + "\n");
+    }
+
+    @NotNull
+    @Override
+    String getType() {
+        return "histogram";
+    }
+
+    @Override
+    void collectAttributes(@NotNull Map<String, Number> attributes) {
+        attributes.put(getName() + "_count", getCount());
+        attributes.put(getName() + "_sum", getSum());
+        attributes.put(getName() + "_p50", getQuantile(0.5));
+        attributes.put(getName() + "_p90", getQuantile(0.9));
+        attributes.put(getName() + "_p99", getQuantile(0.99));
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.getting.util.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * A named value of {@link MetricRegistry}, updated from any thread without lock
+ */
+public abstract class Metric {
+
+    @NotNull
+    private final String name;
+
+    @NotNull
+    private final String help;
+
+    Metric(@NotNull String name, @NotNull String help) {
+        this.name = name;
+        this.help = help;
+    }
+
+    @NotNull
+    public String getName() {
+        return name;
+    }
+
+    @NotNull
+    public String getHelp() {
+        return help;
+    }
+
+    /**
+     * Write the samples in text exposition format, after the HELP and TYPE lines
+     */
+    abstract void writeSamples(@NotNull Writer writer) throws IOException;
+
+    /**
+     * @return type in the TYPE line, like "counter"
+     */
+    @NotNull
+    abstract String getType();
+
+    /**
+     * Put the values shown as attributes of {@link MetricsMBean}
+     */
+    abstract void collectAttributes(@NotNull Map<String, Number> attributes);
+
+    @NotNull
+    static String formatNumber(double value) {
+        if (value == Double.POSITIVE_INFINITY) {
+            return "+Inf";
+        }
+        if (value == Double.NEGATIVE_INFINITY) {
+            return "-Inf";
+        }
+        return Double.isNaN(value) ? "NaN" : Double.toString(value);
+    }
+
+    @NotNull
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" + name + "}";
+    }
+
+}
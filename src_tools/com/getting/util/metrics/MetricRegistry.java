@@ -0,0 +1,106 @@
+package com.getting.util.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Metrics by name, read through {@link MetricsMBean} or the text of {@link MetricsServer}:
+ * <pre>
+ * private static final Histogram PROBE_TIME = MetricRegistry.getDefault().histogram("gifconvert_probe_seconds", "...", Histogram.SECONDS_BUCKETS);
+ *
+ * final long startTime = System.nanoTime();
+ * ...
+ * PROBE_TIME.observeNanos(System.nanoTime() - startTime);
+ * </pre>
+ * The same name always gives the same metric, so it can be looked up again anywhere.
+ */
+public class MetricRegistry {
+
+    private static final MetricRegistry DEFAULT = new MetricRegistry();
+
+    private static final Pattern NAME_PATTERN = Pattern.compile("[a-zA-Z_:][a-zA-Z0-9_:]*");
+
+    /**
+     * Sorted by name, the text is stable between scrapes
+     */
+    private final ConcurrentMap<String, Metric> metrics = new ConcurrentSkipListMap<>();
+
+    /**
+     * @return registry all metrics of the application are in
+     */
+    @NotNull
+    public static MetricRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    @NotNull
+    public Counter counter(@NotNull String name, @NotNull String help) {
+        return register(name, Counter.class, key -> new Counter(key, help));
+    }
+
+    /**
+     * @param bounds ascending upper bounds of the buckets, like {@link Histogram#SECONDS_BUCKETS}
+     */
+    @NotNull
+    public Histogram histogram(@NotNull String name, @NotNull String help, @NotNull double[] bounds) {
+        return register(name, Histogram.class, key -> new Histogram(key, help, bounds));
+    }
+
+    @NotNull
+    private <M extends Metric> M register(@NotNull String name, @NotNull Class<M> type, @NotNull Function<String, M> factory) {
+        if (!NAME_PATTERN.matcher(name).matches()) {
+            throw new IllegalArgumentException("invalid metric name " + name);
+        }
+
+        final Metric metric = metrics.computeIfAbsent(name, factory);
+        if (!type.isInstance(metric)) {
+            throw new IllegalArgumentException(name + " is already registered as " + metric.getType());
+        }
+        return type.cast(metric);
+    }
+
+    @NotNull
+    public List<Metric> getMetrics() {
+        return new ArrayList<>(metrics.values());
+    }
+
+    /**
+     * Write all metrics in the text exposition format of Prometheus, version 0.0.4
+     */
+    public void writeText(@NotNull Writer writer) throws IOException {
+        for (Metric metric : metrics.values()) {
+            writer.write("# HELP " + metric.getName() + " " + escapeHelp(metric.getHelp()) + "\n");
+            writer.write("# TYPE " + metric.getName() + " " + metric.getType() + "\n");
+            metric.writeSamples(writer);
+        }
+        writer.flush();
+    }
+
+    @NotNull
+    public String toText() {
+        StringWriter writer = new StringWriter();
+        try {
+            writeText(writer);
+        } catch (IOException e) {
+            // never thrown by StringWriter
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    @NotNull
+    private static String escapeHelp(@NotNull String help) {
+        return help.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+
+}
@@ -0,0 +1,109 @@
+package com.getting.util.metrics;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Show each metric as read only attributes in JConsole or VisualVM: counters by their name, histograms as
+ * name_count, name_sum and estimated name_p50, name_p90, name_p99. Attributes follow the metrics registered later.
+ */
+public class MetricsMBean implements DynamicMBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetricsMBean.class);
+
+    public static final String OBJECT_NAME = "com.getting.util.metrics:type=MetricRegistry";
+
+    @NotNull
+    private final MetricRegistry registry;
+
+    public MetricsMBean(@NotNull MetricRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Register the registry to the platform MBean server once, failures are only logged
+     */
+    public static void register(@NotNull MetricRegistry registry) {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName objectName = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(objectName)) {
+                return;
+            }
+
+            server.registerMBean(new MetricsMBean(registry), objectName);
+            LOGGER.info("metrics registered as " + objectName);
+        } catch (JMException e) {
+            LOGGER.error("register", e);
+        }
+    }
+
+    @NotNull
+    private Map<String, Number> collectAttributes() {
+        Map<String, Number> attributes = new LinkedHashMap<>();
+        for (Metric metric : registry.getMetrics()) {
+            metric.collectAttributes(attributes);
+        }
+        return attributes;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        final Number value = collectAttributes().get(attribute);
+        if (value == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return value;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException(attribute.getName() + " is read only");
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        final Map<String, Number> values = collectAttributes();
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            if (values.containsKey(attribute)) {
+                list.add(new Attribute(attribute, values.get(attribute)));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributeInfos = new ArrayList<>();
+        for (Metric metric : registry.getMetrics()) {
+            Map<String, Number> attributes = new LinkedHashMap<>();
+            metric.collectAttributes(attributes);
+            for (Map.Entry<String, Number> attribute : attributes.entrySet()) {
+                attributeInfos.add(new MBeanAttributeInfo(attribute.getKey(), attribute.getValue().getClass().getName(), metric.getHelp(), true, false, false));
+            }
+        }
+
+        return new MBeanInfo(getClass().getName(), "Metrics of " + MetricRegistry.class.getSimpleName(),
+                attributeInfos.toArray(new MBeanAttributeInfo[attributeInfos.size()]), null, null, null);
+    }
+
+}
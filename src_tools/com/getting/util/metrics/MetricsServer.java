@@ -0,0 +1,81 @@
+package com.getting.util.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serve the text of a registry at http://127.0.0.1:port/metrics for Prometheus or curl to scrape.
+ * Listens on the loopback address only, nothing is reachable from other machines.
+ */
+public class MetricsServer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetricsServer.class);
+
+    public static final String PATH = "/metrics";
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    @NotNull
+    private final MetricRegistry registry;
+
+    @NotNull
+    private final HttpServer server;
+
+    /**
+     * @param port 0 for any free port, see {@link #getPort()}
+     */
+    public MetricsServer(@NotNull MetricRegistry registry, int port) throws IOException {
+        this.registry = registry;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext(PATH, this::handle);
+    }
+
+    public void start() {
+        server.start();
+        LOGGER.info("metrics served at http://" + server.getAddress().getHostString() + ":" + getPort() + PATH);
+    }
+
+    public void stop() {
+        server.stop(0);
+        LOGGER.info("metrics server stopped");
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(@NotNull HttpExchange exchange) throws IOException {
+        try {
+            final String method = exchange.getRequestMethod();
+            if (!"GET".equals(method) && !"HEAD".equals(method)) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            final byte[] body = registry.toText().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            if ("HEAD".equals(method)) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+}
@@ -0,0 +1,190 @@
+package test.com.getting.util;
+
+import com.getting.util.Looper;
+import com.getting.util.Task;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looper Tester.
+ */
+public class LooperTest {
+
+    private Looper looper;
+
+    @Before
+    public void before() throws Exception {
+        looper = new Looper("test");
+    }
+
+    @After
+    public void after() throws Exception {
+        looper.removeAllTasks();
+        looper.quit();
+    }
+
+    /**
+     * Method: postTask(Task task)
+     */
+    @Test
+    public void testPostTask() throws Exception {
+        List<String> runOrder = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch latch = new CountDownLatch(3);
+        looper.postTask(new RecordTask("late", 200, runOrder, latch));
+        looper.postTask(new RecordTask("first", 0, runOrder, latch));
+        looper.postTask(new RecordTask("middle", 100, runOrder, latch));
+
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals("[first, middle, late]", runOrder.toString());
+    }
+
+    /**
+     * Method: removeTask(Object id)
+     */
+    @Test
+    public void testRemoveTask() throws Exception {
+        List<String> runOrder = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch latch = new CountDownLatch(1);
+        looper.postTask(new RecordTask("removed", 100, runOrder, latch));
+        looper.postTask(new RecordTask("removed", 150, runOrder, latch));
+        looper.postTask(new RecordTask("kept", 200, runOrder, latch));
+        looper.removeTask("removed");
+
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals("[kept]", runOrder.toString());
+        Thread.sleep(50);
+        Assert.assertTrue(looper.isAllDone());
+    }
+
+    /**
+     * Method: postLatestTask(Task task)
+     */
+    @Test
+    public void testPostLatestTask() throws Exception {
+        List<String> runOrder = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch latch = new CountDownLatch(2);
+        Assert.assertTrue(looper.postLatestTask(new RecordTask("id", "a", 100, runOrder, latch)));
+        Assert.assertTrue(looper.postLatestTask(new RecordTask("id", "b", 100, runOrder, latch)));
+        Assert.assertFalse(looper.postLatestTask(new RecordTask("id", "b", 100, runOrder, latch)));
+        Assert.assertTrue(looper.postLatestTask(new RecordTask("other", "b", 150, runOrder, latch)));
+
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Thread.sleep(150);
+        Assert.assertEquals("[id, other]", runOrder.toString());
+    }
+
+    /**
+     * Method: removeTask(Object id), canceled tasks delayed long are purged from the queue
+     */
+    @Test
+    public void testRemoveTaskPurgesQueue() throws Exception {
+        List<String> runOrder = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch latch = new CountDownLatch(1);
+        looper.postTask(new RecordTask("kept", 200, runOrder, latch));
+        for (int i = 0; i < 200; i++) {
+            looper.postTask(new RecordTask("removed", 60000, runOrder, latch));
+            looper.removeTask("removed");
+        }
+
+        // the kept task and canceled ones since the last purge
+        Assert.assertTrue(looper.getQueuedTaskCount() <= 64);
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals("[kept]", runOrder.toString());
+        Thread.sleep(50);
+        Assert.assertTrue(looper.isAllDone());
+    }
+
+    /**
+     * Method: postLatestTask(Task task), a canceled running task does not make an equal task redundant
+     */
+    @Test
+    public void testPostLatestTaskAfterCancel() throws Exception {
+        List<String> runOrder = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch latch = new CountDownLatch(1);
+        Assert.assertTrue(looper.postLatestTask(new SlowCancelTask("a", started, runOrder, latch)));
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        // cancels the running a, which keeps running a while
+        Assert.assertTrue(looper.postLatestTask(new RecordTask("id", "b", 0, runOrder, latch)));
+        Assert.assertTrue(looper.postLatestTask(new RecordTask("id", "a", 0, runOrder, latch)));
+
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals("[id]", runOrder.toString());
+    }
+
+    private static class RecordTask extends Task {
+
+        private final List<String> runOrder;
+
+        private final CountDownLatch latch;
+
+        private final String parameters;
+
+        RecordTask(String id, long delay, List<String> runOrder, CountDownLatch latch) {
+            this(id, null, delay, runOrder, latch);
+        }
+
+        RecordTask(String id, String parameters, long delay, List<String> runOrder, CountDownLatch latch) {
+            super(id, delay);
+            this.parameters = parameters;
+            this.runOrder = runOrder;
+            this.latch = latch;
+        }
+
+        @Override
+        public Object getParameters() {
+            return parameters;
+        }
+
+        @Override
+        public void run() {
+            runOrder.add((String) getId());
+            latch.countDown();
+        }
+
+    }
+
+    /**
+     * Runs until canceled, then takes a while to exit without a result
+     */
+    private static class SlowCancelTask extends RecordTask {
+
+        private final CountDownLatch started;
+
+        private final CountDownLatch canceled = new CountDownLatch(1);
+
+        SlowCancelTask(String parameters, CountDownLatch started, List<String> runOrder, CountDownLatch latch) {
+            super("id", parameters, 0, runOrder, latch);
+            this.started = started;
+        }
+
+        @Override
+        public void cancel() {
+            canceled.countDown();
+        }
+
+        @Override
+        public void run() {
+            started.countDown();
+            try {
+                if (!canceled.await(5, TimeUnit.SECONDS)) {
+                    super.run();
+                    return;
+                }
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,46 @@
+package test.com.getting.util.executor;
+
+import com.getting.util.executor.MessageBuffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * MessageBuffer Tester.
+ */
+public class MessageBufferTest {
+
+    /**
+     * Method: toList()
+     */
+    @Test
+    public void testToList() throws Exception {
+        MessageBuffer buffer = new MessageBuffer(3);
+        buffer.add("a");
+        buffer.add("b");
+        Assert.assertEquals(Arrays.asList("a", "b"), buffer.toList());
+
+        buffer.add("c");
+        buffer.add("d");
+        buffer.add("e");
+        Assert.assertEquals(Arrays.asList("c", "d", "e"), buffer.toList());
+        Assert.assertEquals(5, buffer.getLineCount());
+    }
+
+    /**
+     * Method: get(long lineIndex)
+     */
+    @Test
+    public void testGet() throws Exception {
+        MessageBuffer buffer = new MessageBuffer(2);
+        buffer.add("a");
+        buffer.add("b");
+        buffer.add("c");
+        Assert.assertNull(buffer.get(0));
+        Assert.assertEquals("b", buffer.get(1));
+        Assert.assertEquals("c", buffer.get(2));
+        Assert.assertNull(buffer.get(3));
+    }
+
+}
@@ -0,0 +1,61 @@
+package test.com.getting.util.ffmpeg;
+
+import com.getting.util.ffmpeg.FfmpegUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * FfmpegUtil Tester.
+ */
+public class FfmpegUtilTest {
+
+    /**
+     * Method: getVideoInfo(@NotNull List<String> messages)
+     */
+    @Test
+    public void testGetVideoInfo() throws Exception {
+        List<String> messages = Arrays.asList(
+                "ffmpeg version N-83145-gd60f090 Copyright (c) 2000-2017 the FFmpeg developers",
+                "Input #0, mov,mp4,m4a,3gp,3g2,mj2, from 'a.mp4':",
+                "  Metadata:",
+                "    major_brand     : isom",
+                "  Duration: 00:01:05.43, start: 0.000000, bitrate: 1205 kb/s",
+                "    Stream #0:0(und): Audio: aac (LC) (mp4a / 0x6134706D), 44100 Hz, stereo, fltp, 128 kb/s (default)",
+                "    Stream #0:1(und): Video: h264 (High) (avc1 / 0x31637661), yuv420p(tv, bt709), 1280x720 [SAR 1:1 DAR 16:9], 1071 kb/s, 29.97 fps, 29.97 tbr, 30k tbn, 59.94 tbc (default)",
+                "    Metadata:",
+                "      rotate          : 90",
+                "At least one output file must be specified",
+                "    Stream #0:2: Video: mjpeg, yuvj420p, 640x360, 90k tbr, 90k tbn (attached pic)");
+
+        FfmpegUtil.VideoInfo videoInfo = FfmpegUtil.getVideoInfo(messages);
+        Assert.assertNotNull(videoInfo);
+        Assert.assertEquals(1280, videoInfo.getVideoSize().x);
+        Assert.assertEquals(720, videoInfo.getVideoSize().y);
+        Assert.assertEquals(29.97, videoInfo.getFrameRate(), 1e-9);
+        Assert.assertEquals(65.43, videoInfo.getDuration(), 1e-9);
+        Assert.assertEquals("00:01:05.43", videoInfo.getDurationDescription());
+        Assert.assertEquals("h264", videoInfo.getVideoCodec());
+        Assert.assertEquals("yuv420p", videoInfo.getPixelFormat());
+        Assert.assertEquals(90, videoInfo.getRotation());
+        Assert.assertEquals(1205, videoInfo.getBitRate());
+        Assert.assertTrue(videoInfo.hasAudio());
+    }
+
+    /**
+     * Method: getVideoInfo(@NotNull List<String> messages)
+     */
+    @Test
+    public void testGetVideoInfoWithoutVideo() throws Exception {
+        List<String> messages = Arrays.asList(
+                "Input #0, mp3, from 'a.mp3':",
+                "  Duration: N/A, start: 0.000000, bitrate: N/A",
+                "    Stream #0:0: Audio: mp3, 44100 Hz, stereo, s16p, 128 kb/s",
+                "At least one output file must be specified");
+
+        Assert.assertNull(FfmpegUtil.getVideoInfo(messages));
+    }
+
+}
@@ -0,0 +1,73 @@
+package test.com.getting.util.ffmpeg;
+
+import com.getting.util.ffmpeg.FfmpegUtil;
+import com.getting.util.ffmpeg.FfprobeParser;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.StringReader;
+
+/**
+ * FfprobeParser Tester.
+ */
+public class FfprobeParserTest {
+
+    /**
+     * Method: parse(@NotNull Reader reader)
+     */
+    @Test
+    public void testParse() throws Exception {
+        String json = "{\n" +
+                "    \"programs\": [\n\n    ],\n" +
+                "    \"streams\": [\n" +
+                "        {\"codec_name\": \"mjpeg\", \"codec_type\": \"video\", \"width\": 300, \"height\": 300, \"r_frame_rate\": \"90000/1\", \"avg_frame_rate\": \"0/0\", \"disposition\": {\"attached_pic\": 1}},\n" +
+                "        {\"codec_name\": \"aac\", \"codec_type\": \"audio\", \"r_frame_rate\": \"0/0\", \"tags\": {\"language\": \"und\"}},\n" +
+                "        {\"codec_name\": \"h264\", \"codec_type\": \"video\", \"width\": 1280, \"height\": 720, \"pix_fmt\": \"yuv420p\",\n" +
+                "         \"r_frame_rate\": \"30000/1001\", \"avg_frame_rate\": \"30000/1001\", \"disposition\": {\"default\": 1, \"attached_pic\": 0},\n" +
+                "         \"tags\": {\"rotate\": \"90\", \"handler_name\": \"Video \\\"Handler\\\" \\u4e2d\"}, \"side_data_list\": [{\"side_data_type\": \"Display Matrix\", \"rotation\": -90}]}\n" +
+                "    ],\n" +
+                "    \"format\": {\"duration\": \"65.430000\", \"bit_rate\": \"1205000\", \"tags\": {\"encoder\": null, \"valid\": true}}\n" +
+                "}";
+
+        FfmpegUtil.VideoInfo videoInfo = FfprobeParser.parse(new StringReader(json));
+        Assert.assertNotNull(videoInfo);
+        Assert.assertEquals(1280, videoInfo.getVideoSize().x);
+        Assert.assertEquals(720, videoInfo.getVideoSize().y);
+        Assert.assertEquals(29.97, videoInfo.getFrameRate(), 1e-9);
+        Assert.assertEquals(65.43, videoInfo.getDuration(), 1e-9);
+        Assert.assertEquals("00:01:05.43", videoInfo.getDurationDescription());
+        Assert.assertEquals("h264", videoInfo.getVideoCodec());
+        Assert.assertEquals("yuv420p", videoInfo.getPixelFormat());
+        Assert.assertEquals(90, videoInfo.getRotation());
+        Assert.assertEquals(1205, videoInfo.getBitRate());
+        Assert.assertTrue(videoInfo.hasAudio());
+    }
+
+    /**
+     * Method: parse(@NotNull Reader reader)
+     */
+    @Test
+    public void testParseDisplayMatrixRotation() throws Exception {
+        String json = "{\n" +
+                "    \"streams\": [\n" +
+                "        {\"codec_name\": \"hevc\", \"codec_type\": \"video\", \"width\": 1920, \"height\": 1080, \"r_frame_rate\": \"30/1\", \"avg_frame_rate\": \"30/1\",\n" +
+                "         \"side_data_list\": [{\"side_data_type\": \"Display Matrix\", \"displaymatrix\": \"\\n00000000:            0       65536           0\\n\", \"rotation\": -90}]}\n" +
+                "    ],\n" +
+                "    \"format\": {\"duration\": \"4.000000\"}\n" +
+                "}";
+
+        FfmpegUtil.VideoInfo videoInfo = FfprobeParser.parse(new StringReader(json));
+        Assert.assertNotNull(videoInfo);
+        Assert.assertEquals(90, videoInfo.getRotation());
+    }
+
+    /**
+     * Method: parse(@NotNull Reader reader)
+     */
+    @Test
+    public void testParseWithoutVideo() throws Exception {
+        String json = "{\"streams\": [{\"codec_type\": \"audio\"}], \"format\": {\"duration\": \"3.5\"}}";
+        Assert.assertNull(FfprobeParser.parse(new StringReader(json)));
+    }
+
+}
@@ -0,0 +1,59 @@
+package test.com.getting.util.ffmpeg;
+
+import com.getting.util.ffmpeg.FfmpegProgress;
+import com.getting.util.ffmpeg.ProgressParser;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * ProgressParser Tester.
+ */
+public class ProgressParserTest {
+
+    /**
+     * Method: feed(@NotNull String line)
+     */
+    @Test
+    public void testFeed() throws Exception {
+        ProgressParser parser = new ProgressParser();
+        Assert.assertNull(parser.feed("frame=25"));
+        Assert.assertNull(parser.feed("fps=12.50"));
+        Assert.assertNull(parser.feed("stream_0_0_q=-0.0"));
+        Assert.assertNull(parser.feed("total_size=102400"));
+        Assert.assertNull(parser.feed("out_time_ms=1500000"));
+        Assert.assertNull(parser.feed("out_time=00:00:01.500000"));
+        Assert.assertNull(parser.feed("speed=2.03x"));
+
+        FfmpegProgress progress = parser.feed("progress=continue");
+        Assert.assertNotNull(progress);
+        Assert.assertEquals(25, progress.getFrame());
+        Assert.assertEquals(12.5, progress.getFps(), 0.0001);
+        Assert.assertEquals(102400, progress.getTotalSize());
+        Assert.assertEquals(1.5, progress.getOutTime(), 0.0001);
+        Assert.assertEquals(2.03, progress.getSpeed(), 0.0001);
+        Assert.assertFalse(progress.isEnd());
+
+        Assert.assertNull(parser.feed("speed=   1x"));
+        progress = parser.feed("progress=end");
+        Assert.assertNotNull(progress);
+        Assert.assertEquals(1, progress.getSpeed(), 0.0001);
+        Assert.assertTrue(progress.isEnd());
+    }
+
+    /**
+     * Method: feed(@NotNull String line)
+     */
+    @Test
+    public void testFeedUnknownValue() throws Exception {
+        ProgressParser parser = new ProgressParser();
+        parser.feed("total_size=N/A");
+        parser.feed("speed=N/A");
+        parser.feed("not a progress line");
+        FfmpegProgress progress = parser.feed("progress=continue");
+        Assert.assertNotNull(progress);
+        Assert.assertEquals(-1, progress.getTotalSize());
+        Assert.assertEquals(-1, progress.getSpeed(), 0.0001);
+        Assert.assertEquals(-1, progress.getOutTime(), 0.0001);
+    }
+
+}
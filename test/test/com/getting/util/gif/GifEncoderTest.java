@@ -0,0 +1,141 @@
+package test.com.getting.util.gif;
+
+import com.getting.util.gif.GifEncoder;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * GifEncoder Tester.
+ */
+public class GifEncoderTest {
+
+    /**
+     * Method: addFrame(byte[] rgb, int delay)
+     */
+    @Test
+    public void testAddFrame() throws Exception {
+        final int width = 16;
+        final int height = 8;
+        byte[] frame = new byte[width * height * 3];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                setPixel(frame, width, x, y, x < width / 2 ? (y < height / 2 ? 0xFF0000 : 0x00FF00) : (y < height / 2 ? 0x0000FF : 0x000000));
+            }
+        }
+
+        ByteArrayOutputStream gif = new ByteArrayOutputStream();
+        GifEncoder encoder = new GifEncoder(gif, width, height);
+        encoder.addFrame(frame, 10);
+        setPixel(frame, width, 5, 3, 0xFFFFFF);
+        setPixel(frame, width, 6, 4, 0xFFFFFF);
+        encoder.addFrame(frame, 10);
+        encoder.addFrame(frame, 10);
+        encoder.finish();
+
+        ImageReader reader = read(gif.toByteArray());
+        Assert.assertEquals(3, reader.getNumImages(true));
+        BufferedImage first = reader.read(0);
+        Assert.assertEquals(width, first.getWidth());
+        Assert.assertEquals(height, first.getHeight());
+        Assert.assertEquals(0xFF0000, first.getRGB(0, 0) & 0xFFFFFF);
+        Assert.assertEquals(0x00FF00, first.getRGB(0, height - 1) & 0xFFFFFF);
+        Assert.assertEquals(0x0000FF, first.getRGB(width - 1, 0) & 0xFFFFFF);
+        // only the changed box
+        BufferedImage second = reader.read(1);
+        Assert.assertEquals(2, second.getWidth());
+        Assert.assertEquals(2, second.getHeight());
+        Assert.assertEquals(0xFFFFFF, second.getRGB(0, 0) & 0xFFFFFF);
+        Assert.assertEquals(0, second.getRGB(1, 0) >>> 24);
+        // nothing changed
+        Assert.assertEquals(1, reader.read(2).getWidth());
+    }
+
+    /**
+     * Method: addFrame(byte[] rgb, int delay), more codes than the LZW table holds
+     */
+    @Test
+    public void testAddLargeFrame() throws Exception {
+        final int width = 200;
+        final int height = 150;
+        final int[] colors = new int[256];
+        for (int i = 0; i < colors.length; i++) {
+            colors[i] = (i & 7) << 21 | ((i >> 3) & 7) << 13 | (i >> 6) << 6;
+        }
+        Random random = new Random(1);
+        final int[] expected = new int[width * height];
+        byte[] frame = new byte[width * height * 3];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = colors[random.nextInt(colors.length)];
+            setPixel(frame, width, i % width, i / width, expected[i]);
+        }
+
+        ByteArrayOutputStream gif = new ByteArrayOutputStream();
+        GifEncoder encoder = new GifEncoder(gif, width, height, 0);
+        encoder.addFrame(frame, 4);
+        encoder.finish();
+
+        BufferedImage image = read(gif.toByteArray()).read(0);
+        for (int i = 0; i < expected.length; i++) {
+            Assert.assertEquals("pixel " + i, expected[i], image.getRGB(i % width, i / width) & 0xFFFFFF);
+        }
+    }
+
+    /**
+     * Method: addFrame(byte[] rgb, int delay), frames encoded on a pool are written the same in order
+     */
+    @Test
+    public void testAddFrameInParallel() throws Exception {
+        final int width = 64;
+        final int height = 48;
+        Random random = new Random(2);
+        byte[][] frames = new byte[30][width * height * 3];
+        for (int i = 0; i < frames.length; i++) {
+            if (i > 0) {
+                System.arraycopy(frames[i - 1], 0, frames[i], 0, frames[i].length);
+            }
+            for (int j = 0; j < 200; j++) {
+                setPixel(frames[i], width, random.nextInt(width), random.nextInt(height), random.nextInt(0x1000000));
+            }
+        }
+
+        ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+        GifEncoder encoder = new GifEncoder(sequential, width, height);
+        ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        GifEncoder parallelEncoder = new GifEncoder(parallel, width, height, GifEncoder.DEFAULT_TOLERANCE, pool);
+        for (byte[] frame : frames) {
+            encoder.addFrame(frame, 5);
+            parallelEncoder.addFrame(frame, 5);
+        }
+        encoder.finish();
+        parallelEncoder.finish();
+        pool.shutdown();
+
+        Assert.assertArrayEquals(sequential.toByteArray(), parallel.toByteArray());
+        Assert.assertEquals(frames.length, read(parallel.toByteArray()).getNumImages(true));
+    }
+
+    private static void setPixel(byte[] frame, int width, int x, int y, int color) {
+        final int offset = (y * width + x) * 3;
+        frame[offset] = (byte) (color >> 16);
+        frame[offset + 1] = (byte) (color >> 8);
+        frame[offset + 2] = (byte) color;
+    }
+
+    private static ImageReader read(byte[] gif) throws Exception {
+        ImageReader reader = ImageIO.getImageReadersByFormatName("gif").next();
+        ImageInputStream inputStream = ImageIO.createImageInputStream(new ByteArrayInputStream(gif));
+        reader.setInput(inputStream);
+        return reader;
+    }
+
+}
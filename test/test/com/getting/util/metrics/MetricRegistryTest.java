@@ -0,0 +1,74 @@
+package test.com.getting.util.metrics;
+
+import com.getting.util.metrics.Counter;
+import com.getting.util.metrics.Histogram;
+import com.getting.util.metrics.MetricRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * MetricRegistry Tester.
+ */
+public class MetricRegistryTest {
+
+    /**
+     * Method: counter(String name, String help)
+     */
+    @Test
+    public void testCounter() throws Exception {
+        MetricRegistry registry = new MetricRegistry();
+        Counter counter = registry.counter("conversions_total", "Conversions");
+        counter.increment();
+        counter.add(2);
+        Assert.assertSame(counter, registry.counter("conversions_total", "Conversions"));
+        Assert.assertEquals(3, counter.get());
+
+        try {
+            registry.histogram("conversions_total", "Conversions", Histogram.SECONDS_BUCKETS);
+            Assert.fail("registered as counter");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Method: histogram(String name, String help, double[] bounds)
+     */
+    @Test
+    public void testHistogram() throws Exception {
+        Histogram histogram = new MetricRegistry().histogram("encode_seconds", "Encode time", new double[]{1, 2, 4});
+        histogram.observe(0.5);
+        histogram.observe(1);
+        histogram.observe(3);
+        histogram.observe(10);
+        histogram.observe(Double.NaN);
+
+        Assert.assertArrayEquals(new long[]{2, 2, 3, 4}, histogram.getCumulativeCounts());
+        Assert.assertEquals(4, histogram.getCount());
+        Assert.assertEquals(14.5, histogram.getSum(), 0.001);
+        Assert.assertEquals(1, histogram.getQuantile(0.5), 0.001);
+        Assert.assertEquals(4, histogram.getQuantile(0.75), 0.001);
+        Assert.assertEquals(Double.POSITIVE_INFINITY, histogram.getQuantile(1), 0.001);
+    }
+
+    /**
+     * Method: toText()
+     */
+    @Test
+    public void testToText() throws Exception {
+        MetricRegistry registry = new MetricRegistry();
+        registry.counter("failures_total", "Failed conversions").increment();
+        registry.histogram("probe_seconds", "Probe time", new double[]{0.5}).observe(0.25);
+
+        Assert.assertEquals("# HELP failures_total Failed conversions\n" +
+                "# TYPE failures_total counter\n" +
+                "failures_total 1\n" +
+                "# HELP probe_seconds Probe time\n" +
+                "# TYPE probe_seconds histogram\n" +
+                "probe_seconds_bucket{le=\"0.5\"} 1\n" +
+                "probe_seconds_bucket{le=\"+Inf\"} 1\n" +
+                "probe_seconds_sum 0.25\n" +
+                "probe_seconds_count 1\n", registry.toText());
+    }
+
+}